@@ -18,6 +18,12 @@ public interface RobotPerception {
 	/** Return all discovered injured in the health range specified */
 	public List<InjuredInfo> getDiscoveredInjureds(int maxHealth, int minHealth);
 
+	/** Returns a counter incremented on every wall, obstacle or discovery change */
+	public long getTopologyVersion();
+
+	/** Returns the shortest path between two cells */
+	public Path getShortestPath(CellInfo start, CellInfo target, boolean isPathForDrone);
+
 	/** Returns the shortest path to a known exit cell */
 	public Path getShortestExitPath(CellInfo start);
 
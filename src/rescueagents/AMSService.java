@@ -2,12 +2,15 @@ package rescueagents;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import interfaces.CellInfo;
 import interfaces.InjuredInfo;
 import interfaces.RobotInterface;
+import interfaces.RobotPerception;
 import rescueframework.AbstractRobotControl;
 import rescueframework.Action;
+import rescueframework.LogLevel;
 import rescueframework.RescueFramework;
 import world.Path;
 
@@ -18,43 +21,48 @@ import world.Path;
  */
 public class AMSService {
 
-    static AMSService amsService;
-    public static world.Map internalWorldModel;
+    private world.Map internalWorldModel;
 
     // Track which injured person is "claimed" by which robot.
     // Key: Injured ID, Value: Robot Instance ID
     private Map<Integer, Integer> claimedInjureds = new HashMap<>();
 
-    private AMSService() {
+    /**
+     * Creates the service of a simulation. Called by the framework.
+     * @param initialWorldMap The initial version of the internal world model
+     */
+    public AMSService(world.Map initialWorldMap) {
+        internalWorldModel = initialWorldMap;
     }
 
-    public static AMSService getAMSService() {
-        if (amsService == null) {
-            amsService = new AMSService();
-        }
-        return amsService;
+    /**
+     * Returns the service of the simulation the perception belongs to.
+     */
+    public static AMSService getAMSService(RobotPerception perception) {
+        // The perception is the discovered map of the simulation
+        return ((world.Map) perception).getContext().getAMSService();
     }
 
     /**
      * Returns the internal world model.
      */
-    public static world.Map getInternalMap() {
+    public world.Map getInternalMap() {
         return internalWorldModel;
     }
 
-    /**
-     * Initializes the internal world model. Called by the framework.
-     */
-    public static void setInternalWorldModel(world.Map initialWorldMap) {
-        internalWorldModel = initialWorldMap;
+    public static void log(AbstractRobotControl control, String message) {
+        if (RescueFramework.isLoggable(LogLevel.DEBUG))
+            RescueFramework.log(LogLevel.DEBUG, control.getRobotName() + " " + message);
     }
 
-    public static void log(AbstractRobotControl control, String message) {
-        RescueFramework.log(control.getRobotName() + " " + message);
+    public static void log(AbstractRobotControl control, Supplier<String> message) {
+        if (RescueFramework.isLoggable(LogLevel.DEBUG))
+            RescueFramework.log(LogLevel.DEBUG, control.getRobotName() + " " + message.get());
     }
     
     public static void log(RobotInterface rob, String message) {
-        RescueFramework.log(rob.getName() + " " + message);
+        if (RescueFramework.isLoggable(LogLevel.DEBUG))
+            RescueFramework.log(LogLevel.DEBUG, rob.getName() + " " + message);
     }
 
     // --- Coordination Methods ---
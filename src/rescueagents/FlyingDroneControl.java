@@ -17,15 +17,15 @@ public class FlyingDroneControl extends AbstractRobotControl {
 
     public FlyingDroneControl(Robot robot, RobotPerception perception) {
         super(robot, perception);
-        this.amsService = AMSService.getAMSService();
-        internalWorldMap = AMSService.getInternalMap();
+        this.amsService = AMSService.getAMSService(perception);
+        internalWorldMap = amsService.getInternalMap();
         this.setRobotName("Drone");
     }
 
     @Override
     public Action step() {
         // 1. Exploration: Find the nearest unknown area.
-        path = internalWorldMap.getShortestUnknownPath(robot.getLocation());
+        path = followPath(UNKNOWN, () -> internalWorldMap.getShortestUnknownPath(robot.getLocation()));
         
         if (path != null) {
             // AMSService.log(this, "Exploring...");
@@ -35,7 +35,7 @@ public class FlyingDroneControl extends AbstractRobotControl {
         // 2. If no unknown area (map fully explored),
         // do not waste energy hovering, go to exit and stop.
         if (!robot.getLocation().isExit()) {
-            path = internalWorldMap.getShortestExitPath(robot.getLocation());
+            path = followPath(EXIT, () -> internalWorldMap.getShortestExitPath(robot.getLocation()));
             if (path != null) {
                 return amsService.moveRobotAlongPath(robot, path);
             }
@@ -26,8 +26,8 @@ public class MedicalRobotControl extends AbstractRobotControl {
         super(robot, perception);
         // Even if the medic acts as "Rescue" (when out of medicine), it needs the rescue logic
         fallbackRobotControl = new RescueRobotControl(robot, perception);
-        this.amsService = AMSService.getAMSService();
-        internalWorldMap = AMSService.getInternalMap();
+        this.amsService = AMSService.getAMSService(perception);
+        internalWorldMap = amsService.getInternalMap();
         this.setRobotName("Medic");
     }
 
@@ -45,7 +45,7 @@ public class MedicalRobotControl extends AbstractRobotControl {
                 // Heal!
                 // Tactic: Don't strictly require MAX/3. If we are already here,
                 // healing adds health which buffers against the time it takes to transport them.
-                AMSService.log(this, "Healing in progress. HP: " + inj.getHealth());
+                AMSService.log(this, () -> "Healing in progress. HP: " + inj.getHealth());
                 return Action.HEAL;
             }
         }
@@ -56,7 +56,7 @@ public class MedicalRobotControl extends AbstractRobotControl {
         
         if (target != null) {
              // Go to the patient
-             path = world.AStarSearch.search((world.Cell)robot.getLocation(), (world.Cell)target.getLocation(), -1);
+             path = followPath(target.getLocation(), () -> internalWorldMap.getShortestPath(robot.getLocation(), target.getLocation(), false));
              if (path != null) {
                  return amsService.moveRobotAlongPath(robot, path);
              }
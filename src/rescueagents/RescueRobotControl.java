@@ -24,8 +24,8 @@ public class RescueRobotControl extends AbstractRobotControl {
 
     public RescueRobotControl(Robot robot, RobotPerception perception) {
         super(robot, perception);
-        this.amsService = AMSService.getAMSService();
-        internalWorldMap = AMSService.getInternalMap();
+        this.amsService = AMSService.getAMSService(perception);
+        internalWorldMap = amsService.getInternalMap();
         this.setRobotName("Rescue");
     }
 
@@ -44,12 +44,12 @@ public class RescueRobotControl extends AbstractRobotControl {
                 return Action.PUT_DOWN;
             } else {
                 // Path to nearest exit
-                path = internalWorldMap.getShortestExitPath(robot.getLocation());
+                path = followPath(EXIT, () -> internalWorldMap.getShortestExitPath(robot.getLocation()));
                 if (path != null) {
                     return amsService.moveRobotAlongPath(robot, path);
                 } else {
                     AMSService.log(this, "Cannot find path to exit! Exploring...");
-                    path = internalWorldMap.getShortestUnknownPath(robot.getLocation());
+                    path = followPath(UNKNOWN, () -> internalWorldMap.getShortestUnknownPath(robot.getLocation()));
                      return amsService.moveRobotAlongPath(robot, path);
                 }
             }
@@ -77,7 +77,7 @@ public class RescueRobotControl extends AbstractRobotControl {
             currentTargetInjuredId = id;
 
             // Go there using A* Search
-            path = world.AStarSearch.search((world.Cell)robot.getLocation(), (world.Cell)bestTarget.getLocation(), -1);
+            path = followPath(bestTarget.getLocation(), () -> internalWorldMap.getShortestPath(robot.getLocation(), bestTarget.getLocation(), false));
             
             if (path != null) {
                 return amsService.moveRobotAlongPath(robot, path);
@@ -90,14 +90,14 @@ public class RescueRobotControl extends AbstractRobotControl {
              currentTargetInjuredId = -1;
         }
         
-        path = internalWorldMap.getShortestUnknownPath(robot.getLocation());
+        path = followPath(UNKNOWN, () -> internalWorldMap.getShortestUnknownPath(robot.getLocation()));
         if (path != null) {
             return amsService.moveRobotAlongPath(robot, path);
         }
 
         // 5. If everything is explored and no work left, go to exit and rest
         if (!robot.getLocation().isExit()) {
-            path = internalWorldMap.getShortestExitPath(robot.getLocation());
+            path = followPath(EXIT, () -> internalWorldMap.getShortestExitPath(robot.getLocation()));
             return amsService.moveRobotAlongPath(robot, path);
         }
 
@@ -3,7 +3,7 @@ package rescueagents;
 import interfaces.RobotPerception;
 import rescueframework.AbstractRobotControl;
 import rescueframework.Action;
-import rescueframework.MainFrame;
+import rescueframework.SimulationContext;
 import world.Robot;
 
 /**
@@ -15,7 +15,7 @@ public class StaticSensorControl extends AbstractRobotControl {
 
     public StaticSensorControl(Robot robot, RobotPerception perception) {
         super(robot, perception);
-        this.amsService = AMSService.getAMSService();
+        this.amsService = AMSService.getAMSService(perception);
         this.setRobotName("Sensor");
     }
 
@@ -24,11 +24,11 @@ public class StaticSensorControl extends AbstractRobotControl {
         return Action.IDLE;
     }
     
-    public static int generateXCoord(int mapWidth, int mapHeight) { 
-        return MainFrame.randomBetween(1, mapWidth - 2); 
+    public static int generateXCoord(SimulationContext context, int mapWidth, int mapHeight) { 
+        return context.getAgentRandom().nextInt(mapWidth - 1) + 1;
     }
     
-    public static int generateYCoord(int mapWidth, int mapHeight) {
-        return MainFrame.randomBetween(1, mapHeight - 2);
+    public static int generateYCoord(SimulationContext context, int mapWidth, int mapHeight) {
+        return context.getAgentRandom().nextInt(mapHeight - 1) + 1;
     }
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package rescueframework;
 
+import java.util.Objects;
+import java.util.function.Supplier;
+
 import interfaces.RobotInterface;
 import interfaces.RobotPerception;
 import world.Path;
@@ -15,8 +18,17 @@ public abstract class AbstractRobotControl {
     /** The robot object in the world */
     protected RobotInterface robot;
     
+    /** Target key of the paths to the nearest exit */
+    protected static final String EXIT = "exit";
+    /** Target key of the paths to the nearest unknown cell */
+    protected static final String UNKNOWN = "unknown";
+
     /** The path the robot is following right now */
     protected Path path;
+    /** Target the path was planned to (a cell or a target key) */
+    private Object pathTarget = null;
+    /** Topology version of the perception when the path was planned */
+    private long pathVersion = -1;
 
     /**
      * Default constructor 
@@ -39,6 +51,27 @@ public abstract class AbstractRobotControl {
         return path;
     }
 
+    /**
+     * Returns the path to follow to a target. The current path is kept while
+     * the target and the topology of the perception are the same, the path
+     * does not lead around robots and its next cell is free, so following a
+     * path costs O(1) per step. Otherwise replan is called for a new path.
+     *
+     * @param target    The target cell or a target key (EXIT, UNKNOWN)
+     * @param replan    Plans a new path from the location of the robot
+     * @return          The path to follow or null if there is none
+     */
+    protected Path followPath(Object target, Supplier<Path> replan) {
+        long version = perception.getTopologyVersion();
+        if (path == null || path.isAroundRobots() || version != pathVersion || !Objects.equals(target, pathTarget)
+                || !path.isNextCellFree(robot.getLocation())) {
+            path = replan.get();
+            pathTarget = target;
+            pathVersion = version;
+        }
+        return path;
+    }
+
     /**
      * Abstract step method to determine the moving direction of the robot
      *
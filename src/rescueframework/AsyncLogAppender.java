@@ -0,0 +1,107 @@
+package rescueframework;
+
+import java.io.PrintStream;
+
+/**
+ * Writes log lines to a stream on a background thread. The lines are queued
+ * in a fixed size ring buffer; the caller only waits if the buffer is full.
+ */
+class AsyncLogAppender implements Runnable {
+    /** Queued lines */
+    private final String[] ring;
+    /** Index of the oldest queued line */
+    private int head = 0;
+    /** Number of queued lines */
+    private int size = 0;
+    /** True while the writer thread prints a batch */
+    private boolean writing = false;
+    /** The stream to write to */
+    private final PrintStream out;
+
+    /**
+     * Create the appender and start its writer thread
+     * 
+     * @param out       The stream to write to
+     * @param capacity  Number of lines the buffer can hold
+     */
+    AsyncLogAppender(PrintStream out, int capacity) {
+        this.out = out;
+        ring = new String[capacity];
+
+        Thread writer = new Thread(this, "Log writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        // Write the queued lines before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+    }
+
+    /**
+     * Queue a line, waiting while the buffer is full
+     * 
+     * @param line      The line to write
+     */
+    synchronized void append(String line) {
+        try {
+            while (size == ring.length) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            out.println(line);
+            return;
+        }
+        ring[(head + size) % ring.length] = line;
+        size++;
+        notifyAll();
+    }
+
+    /**
+     * Wait until every queued line is written
+     */
+    synchronized void flush() {
+        try {
+            while (size > 0 || writing) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Main method of the writer thread
+     */
+    @Override
+    public void run() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            // Take every queued line at once
+            synchronized (this) {
+                while (size == 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                for (; size > 0; size--) {
+                    batch.append(ring[head]).append(System.lineSeparator());
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                }
+                writing = true;
+                notifyAll();
+            }
+
+            out.print(batch);
+            out.flush();
+            batch.setLength(0);
+
+            synchronized (this) {
+                writing = false;
+                notifyAll();
+            }
+        }
+    }
+}
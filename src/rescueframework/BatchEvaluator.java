@@ -0,0 +1,152 @@
+package rescueframework;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import world.ScoreSnapshot;
+
+/**
+ * Batch entry point running many headless simulations in parallel.
+ * Every map is run with every agent configuration and random seed, then the
+ * score components are printed per episode and averaged per map and
+ * configuration.
+ */
+public class BatchEvaluator {
+
+    /**
+     * Score components of a finished episode
+     */
+    private static class EpisodeResult {
+        String map;
+        String config;
+        int seed;
+        int time;
+        int savedAlive;
+        int deadOutside;
+        int robotCost;
+        int energy;
+        int score;
+    }
+
+    /**
+     * Main method of the batch evaluator
+     *
+     * Arguments: maps configs seeds [max_steps] [threads]
+     * maps:    comma separated map file names or "all" for every map in the maps folder
+     * configs: semicolon separated agent counts as rescue,medical,drone,static_sensor
+     * seeds:   number of random seeds (0 .. seeds-1) per map and configuration
+     *
+     * @param args      The command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: BatchEvaluator <maps|all> <r,m,d,s;...> <seeds> [max steps] [threads]");
+            System.exit(1);
+        }
+
+        List<String> maps = new ArrayList<>();
+        if (args[0].equals("all")) {
+            for (File file : new File("maps").listFiles()) {
+                if (file.isFile()) maps.add(file.getName());
+            }
+            maps.sort(null);
+        } else {
+            maps.addAll(Arrays.asList(args[0].split(",")));
+        }
+        String[] configs = args[1].split(";");
+        int seeds = Integer.parseInt(args[2]);
+        int maxSteps = args.length >= 4 ? Integer.parseInt(args[3]) : 0;
+        int threads = args.length >= 5 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        // The robots log every step, which would flood the console
+        RescueFramework.logLevel = LogLevel.OFF;
+
+        // Submit every episode to the pool
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<EpisodeResult>> futures = new ArrayList<>();
+        for (String map : maps) {
+            for (String config : configs) {
+                for (int seed = 0; seed < seeds; seed++) {
+                    final int episodeSeed = seed;
+                    futures.add(pool.submit(() -> runEpisode(map, config, episodeSeed, maxSteps)));
+                }
+            }
+        }
+
+        // Collect the results in submission order
+        List<EpisodeResult> results = new ArrayList<>();
+        System.out.println("map;config;seed;time;saved_alive;dead_outside;robot_cost;energy;score");
+        for (Future<EpisodeResult> future : futures) {
+            EpisodeResult r = future.get();
+            results.add(r);
+            System.out.println(r.map + ";" + r.config + ";" + r.seed + ";" + r.time + ";" + r.savedAlive + ";"
+                    + r.deadOutside + ";" + r.robotCost + ";" + r.energy + ";" + r.score);
+        }
+        pool.shutdown();
+
+        // Average the components per map and configuration
+        System.out.println();
+        System.out.println("map;config;episodes;time;saved_alive;dead_outside;robot_cost;energy;score");
+        for (String map : maps) {
+            for (String config : configs) {
+                double[] sum = new double[6];
+                int count = 0;
+                for (EpisodeResult r : results) {
+                    if (!r.map.equals(map) || !r.config.equals(config)) continue;
+                    sum[0] += r.time;
+                    sum[1] += r.savedAlive;
+                    sum[2] += r.deadOutside;
+                    sum[3] += r.robotCost;
+                    sum[4] += r.energy;
+                    sum[5] += r.score;
+                    count++;
+                }
+                StringBuilder line = new StringBuilder(map + ";" + config + ";" + count);
+                for (double value : sum) {
+                    line.append(String.format(";%.1f", value / count));
+                }
+                System.out.println(line);
+            }
+        }
+        System.out.println();
+        System.out.println(results.size() + " episodes on " + threads + " threads in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Run a single episode and collect its score
+     *
+     * @param map       File name of the map
+     * @param config    Agent counts as rescue,medical,drone,static_sensor
+     * @param seed      Random seed of the episode
+     * @param maxSteps  Maximum number of steps, 0 for no limit
+     * @return          The score components of the episode
+     */
+    private static EpisodeResult runEpisode(String map, String config, int seed, int maxSteps) {
+        String[] counts = config.split(",");
+        SimulationContext context = new SimulationContext(seed);
+        context.load(map, Integer.parseInt(counts[0]), Integer.parseInt(counts[1]), Integer.parseInt(counts[2]),
+                Integer.parseInt(counts[3]));
+        HeadlessRunner.run(context, maxSteps);
+
+        ScoreSnapshot score = context.getMap().getScore();
+
+        EpisodeResult result = new EpisodeResult();
+        result.map = map;
+        result.config = config;
+        result.seed = seed;
+        result.time = score.getTime();
+        result.savedAlive = score.getAliveOutside();
+        result.deadOutside = score.getDeadOutside();
+        result.robotCost = score.getRobotCost();
+        result.energy = score.getConsumedEnergy();
+        result.score = score.getFinalScore();
+        return result;
+    }
+}
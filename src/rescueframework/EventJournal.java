@@ -0,0 +1,421 @@
+package rescueframework;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import world.Injured;
+
+/**
+ * Compact binary journal of a simulation run.
+ *
+ * The journal starts with the parameters of the run (map, agent counts and
+ * random seed), followed by one record per step start, wall removal, robot
+ * action and injured state change. Loading the same map with the same
+ * parameters and applying the recorded walls and actions reproduces the run
+ * without calling the robot controls.
+ *
+ * Every simulation replaying the journal reads it with its own position.
+ * The replayed state is kept in snapshots at regular steps, shared by the
+ * replays of the journal, so a replay can start from the nearest snapshot
+ * instead of the first step. The snapshots are not saved to the file.
+ */
+public class EventJournal {
+	/** First bytes of a journal file */
+	private static final int MAGIC = 0x524a4e4c;
+	/** Format version of the journal file */
+	private static final int VERSION = 1;
+
+	/** Record of a step start: time (int) */
+	private static final byte STEP = 1;
+	/** Record of a wall removal: x (short), y (short), direction (byte), junk (byte) */
+	private static final byte WALL_REMOVED = 2;
+	/** Record of a robot action: robot index (short), action ordinal (byte, -1 for none) */
+	private static final byte ACTION = 3;
+	/** Record of an injured change: injured index (short), health (short), x (short), y (short), saved (byte) */
+	private static final byte INJURED = 4;
+
+	/** Steps between the snapshots of the replayed state */
+	private static final int SNAPSHOT_INTERVAL = 100;
+	/** Number of snapshots kept at most, long journals take them less often */
+	private static final int MAX_SNAPSHOTS = 100;
+
+	/** File name of the map */
+	private final String mapName;
+	/** Agent counts of the run */
+	private final int rescueCount, medicalCount, droneCount, staticSensorCount;
+	/** Random seed of the run */
+	private final int randomSeed;
+
+	/** Records being written */
+	private ByteArrayOutputStream buffer = null;
+	private DataOutputStream out = null;
+	/** Records being replayed */
+	private ByteBuffer in = null;
+	/** Number of steps in the journal */
+	private int stepCount = 0;
+	/** Snapshots of the replayed state by time (shared by the readers of the journal) */
+	private TreeMap<Integer, SimulationContext.Snapshot> snapshots = new TreeMap<>();
+
+	/**
+	 * Create an empty journal to record a run
+	 *
+	 * @param mapName
+	 *            File name of the map in the maps folder
+	 * @param rescueCount
+	 *            Number of rescue robots
+	 * @param medicalCount
+	 *            Number of medical robots
+	 * @param droneCount
+	 *            Number of drones
+	 * @param staticSensorCount
+	 *            Number of static sensors
+	 * @param randomSeed
+	 *            Seed of the random generator
+	 */
+	public EventJournal(String mapName, int rescueCount, int medicalCount, int droneCount, int staticSensorCount,
+			int randomSeed) {
+		this.mapName = mapName;
+		this.rescueCount = rescueCount;
+		this.medicalCount = medicalCount;
+		this.droneCount = droneCount;
+		this.staticSensorCount = staticSensorCount;
+		this.randomSeed = randomSeed;
+		buffer = new ByteArrayOutputStream(1 << 16);
+		out = new DataOutputStream(buffer);
+	}
+
+	/**
+	 * Create a reader of a loaded journal positioned at the first record
+	 *
+	 * @param source
+	 *            The loaded journal
+	 */
+	private EventJournal(EventJournal source) {
+		this(source.mapName, source.rescueCount, source.medicalCount, source.droneCount, source.staticSensorCount,
+				source.randomSeed);
+		buffer = null;
+		out = null;
+		stepCount = source.stepCount;
+		in = source.in.duplicate();
+		in.rewind();
+		snapshots = source.snapshots;
+	}
+
+	/**
+	 * Load a journal from file for replay
+	 *
+	 * @param file
+	 *            The journal file
+	 * @return The loaded journal
+	 * @throws IOException
+	 *             If the file cannot be read or is not a journal
+	 */
+	public static EventJournal load(File file) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION)
+				throw new IOException(file + " is not a journal file");
+
+			EventJournal journal = new EventJournal(input.readUTF(), input.readInt(), input.readInt(),
+					input.readInt(), input.readInt(), input.readInt());
+			journal.buffer = null;
+			journal.out = null;
+			journal.stepCount = input.readInt();
+			byte[] records = new byte[input.readInt()];
+			input.readFully(records);
+			journal.in = ByteBuffer.wrap(records);
+			return journal;
+		}
+	}
+
+	/**
+	 * Save the recorded journal
+	 *
+	 * @param file
+	 *            The file to save to
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeUTF(mapName);
+			output.writeInt(rescueCount);
+			output.writeInt(medicalCount);
+			output.writeInt(droneCount);
+			output.writeInt(staticSensorCount);
+			output.writeInt(randomSeed);
+			output.writeInt(stepCount);
+			output.writeInt(buffer.size());
+			buffer.writeTo(output);
+		}
+	}
+
+	/**
+	 * Load the map of the journal and set up the new simulation to replay it
+	 *
+	 * @return The simulation replaying the journal
+	 */
+	public SimulationContext createContext() {
+		return createContext(0);
+	}
+
+	/**
+	 * Load the map of the journal and set up the new simulation to replay it
+	 * from the last snapshot not after a step
+	 *
+	 * @param time
+	 *            The simulation time to get close to
+	 * @return The simulation replaying the journal, at the time of the snapshot
+	 */
+	public SimulationContext createContext(int time) {
+		SimulationContext context = new SimulationContext(randomSeed);
+		context.load(mapName, rescueCount, medicalCount, droneCount, staticSensorCount);
+		EventJournal reader = new EventJournal(this);
+
+		Map.Entry<Integer, SimulationContext.Snapshot> snapshot;
+		synchronized (snapshots) {
+			snapshot = snapshots.floorEntry(time);
+		}
+		if (snapshot != null) {
+			context.restore(snapshot.getValue());
+			reader.in.position(snapshot.getValue().journalPosition);
+		}
+		context.replayFrom(reader);
+		return context;
+	}
+
+	/**
+	 * Returns the time of the last snapshot not after a step
+	 *
+	 * @param time
+	 *            The simulation time
+	 * @return The time a replay created for the time starts from
+	 */
+	public int getSnapshotTime(int time) {
+		synchronized (snapshots) {
+			Integer snapshotTime = snapshots.floorKey(time);
+			return snapshotTime == null ? 0 : snapshotTime;
+		}
+	}
+
+	public String getMapName() {
+		return mapName;
+	}
+
+	public int getRescueCount() {
+		return rescueCount;
+	}
+
+	public int getMedicalCount() {
+		return medicalCount;
+	}
+
+	public int getDroneCount() {
+		return droneCount;
+	}
+
+	public int getStaticSensorCount() {
+		return staticSensorCount;
+	}
+
+	public int getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Record the start of a step
+	 *
+	 * @param time
+	 *            The new simulation time
+	 */
+	void step(int time) {
+		try {
+			out.writeByte(STEP);
+			out.writeInt(time);
+			stepCount++;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Record a wall removal
+	 *
+	 * @param x
+	 *            X coordinate of the cell
+	 * @param y
+	 *            Y coordinate of the cell
+	 * @param direction
+	 *            Direction of the removed wall
+	 * @param junk
+	 *            True if junk was left on the cell
+	 */
+	void wallRemoved(int x, int y, int direction, boolean junk) {
+		try {
+			out.writeByte(WALL_REMOVED);
+			out.writeShort(x);
+			out.writeShort(y);
+			out.writeByte(direction);
+			out.writeBoolean(junk);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Record the action of a robot
+	 *
+	 * @param robot
+	 *            Index of the robot
+	 * @param action
+	 *            The action returned by the robot control
+	 */
+	void action(int robot, Action action) {
+		try {
+			out.writeByte(ACTION);
+			out.writeShort(robot);
+			out.writeByte(action == null ? -1 : action.ordinal());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Record the new state of an injured
+	 *
+	 * @param index
+	 *            Index of the injured on the map
+	 * @param injured
+	 *            The changed injured
+	 */
+	void injuredChanged(int index, Injured injured) {
+		try {
+			out.writeByte(INJURED);
+			out.writeShort(index);
+			out.writeShort(injured.getHealth());
+			out.writeShort(injured.getLocation() == null ? -1 : injured.getLocation().getX());
+			out.writeShort(injured.getLocation() == null ? -1 : injured.getLocation().getY());
+			out.writeBoolean(injured.isSaved());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns true if the replayed journal has more steps
+	 *
+	 * @return False at the end of the journal
+	 */
+	boolean hasNextStep() {
+		return in.hasRemaining();
+	}
+
+	/**
+	 * Keep a snapshot of the replay at the end of a step, if the step is due
+	 * and has no snapshot yet
+	 *
+	 * @param context
+	 *            The simulation replaying this reader
+	 */
+	void stepReplayed(SimulationContext context) {
+		int time = context.getTime();
+		if (time % Math.max(SNAPSHOT_INTERVAL, stepCount / MAX_SNAPSHOTS) != 0)
+			return;
+		synchronized (snapshots) {
+			if (snapshots.containsKey(time))
+				return;
+		}
+		SimulationContext.Snapshot snapshot = context.snapshot(in.position());
+		synchronized (snapshots) {
+			snapshots.putIfAbsent(time, snapshot);
+		}
+	}
+
+	/**
+	 * Read the start of the next replayed step
+	 *
+	 * @param time
+	 *            The new simulation time
+	 */
+	void beginStep(int time) {
+		expect(STEP);
+		int recorded = in.getInt();
+		if (recorded != time)
+			throw new IllegalStateException("Replay diverged: step " + recorded + " replayed at time " + time);
+	}
+
+	/**
+	 * Apply the wall removals recorded for the current step
+	 *
+	 * @param context
+	 *            The replaying simulation
+	 */
+	void removeWalls(SimulationContext context) {
+		while (in.hasRemaining() && in.get(in.position()) == WALL_REMOVED) {
+			in.get();
+			int x = in.getShort();
+			int y = in.getShort();
+			int direction = in.get();
+			boolean junk = in.get() != 0;
+			context.getMap().cells[x][y].removeWall(direction, junk);
+		}
+	}
+
+	/**
+	 * Read the recorded action of a robot
+	 *
+	 * @param robot
+	 *            Index of the robot
+	 * @return The recorded action
+	 */
+	Action nextAction(int robot) {
+		expect(ACTION);
+		int recorded = in.getShort();
+		int action = in.get();
+		if (recorded != robot)
+			throw new IllegalStateException("Replay diverged: action of robot " + recorded + " replayed for robot "
+					+ robot);
+		return action < 0 ? null : Action.values()[action];
+	}
+
+	/**
+	 * Check the replayed state of an injured against the recorded one
+	 *
+	 * @param index
+	 *            Index of the injured on the map
+	 * @param injured
+	 *            The changed injured
+	 */
+	void checkInjured(int index, Injured injured) {
+		expect(INJURED);
+		int recorded = in.getShort();
+		int health = in.getShort();
+		in.getShort();
+		in.getShort();
+		boolean saved = in.get() != 0;
+		if (recorded != index || health != injured.getHealth() || saved != injured.isSaved())
+			throw new IllegalStateException("Replay diverged: injured " + index + " does not match the journal");
+	}
+
+	/**
+	 * Read the type of the next record and check it
+	 *
+	 * @param type
+	 *            The expected record type
+	 */
+	private void expect(byte type) {
+		if (!in.hasRemaining() || in.get() != type)
+			throw new IllegalStateException("Replay diverged: record " + type + " expected");
+	}
+}
@@ -0,0 +1,74 @@
+package rescueframework;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Batch entry point running a single simulation without the GUI
+ */
+public class HeadlessRunner {
+
+    /**
+     * Main method of the headless runner
+     * 
+     * Arguments: map rescue_count medical_count drone_count static_sensor_count
+     * [random_seed] [max_steps] [journal_file]
+     * 
+     * @param args      The command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println("Usage: HeadlessRunner <map> <rescue> <medical> <drone> <static sensor> [seed] [max steps] [journal]");
+            System.exit(1);
+        }
+
+        String mapString = args[0];
+        int rescAgentCount = Integer.parseInt(args[1]);
+        int medAgentCount = Integer.parseInt(args[2]);
+        int droneAgentCount = Integer.parseInt(args[3]);
+        int staticSensorCount = Integer.parseInt(args[4]);
+        int randomSeed = args.length >= 6 ? Integer.parseInt(args[5]) : 0;
+        int maxSteps = args.length >= 7 ? Integer.parseInt(args[6]) : 0;
+        String journalFile = args.length >= 8 ? args[7] : null;
+
+        SimulationContext context = new SimulationContext(randomSeed);
+        context.load(mapString, rescAgentCount, medAgentCount, droneAgentCount, staticSensorCount);
+        RescueFramework.log("Map " + mapString + " loaded, running headless.");
+
+        EventJournal journal = null;
+        if (journalFile != null) {
+            journal = new EventJournal(mapString, rescAgentCount, medAgentCount, droneAgentCount, staticSensorCount,
+                    randomSeed);
+            context.recordTo(journal);
+        }
+
+        run(context, maxSteps);
+
+        if (journal != null) {
+            journal.save(new File(journalFile));
+            RescueFramework.log("Journal of " + journal.getStepCount() + " steps saved to " + journalFile);
+        }
+
+        RescueFramework.flushLog();
+        System.out.println(context.getMap().getTotalScore());
+    }
+
+    /**
+     * Step the loaded simulation at full speed until no robot moves or the
+     * step limit is reached
+     * 
+     * @param context   The loaded simulation
+     * @param maxSteps  Maximum number of steps, 0 for no limit
+     */
+    public static void run(SimulationContext context, int maxSteps) {
+        StepThread stepper = new StepThread();
+        context.setStatus(MainFrame.SimulationStatus.RUNNING);
+        while (stepper.stepTime(context)) {
+            if (maxSteps > 0 && context.getTime() >= maxSteps) {
+                RescueFramework.log("Step limit reached. Simulation is finished.");
+                break;
+            }
+        }
+        context.setStatus(MainFrame.SimulationStatus.FINISHED);
+    }
+}
@@ -0,0 +1,12 @@
+package rescueframework;
+
+/**
+ * Severity of a log message, in increasing order
+ */
+public enum LogLevel {
+	DEBUG,
+	INFO,
+	WARNING,
+	ERROR,
+	OFF
+}
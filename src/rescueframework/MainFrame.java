@@ -9,23 +9,19 @@ import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
-import rescueagents.AMSService;
-import rescueagents.StaticSensorControl;
-import world.Cell;
-import world.FlyingDrone;
 import world.Injured;
-import world.Map;
-import world.MedicalRobot;
 import world.PaintPanel;
-import world.RescueRobot;
-import world.Robot;
-import world.StaticSensor;
+import world.ScoreSnapshot;
 
 import static java.lang.Integer.parseInt;
 
@@ -34,20 +30,22 @@ import static java.lang.Integer.parseInt;
  */
 public class MainFrame extends javax.swing.JFrame {
 
-	enum SimulationStatus {
+	public enum SimulationStatus {
 		PAUSED, RUNNING, FINISHED
 	};
 
 	// string constants
 	private static final String SPEED = "speed";
+	private static final String SEED = "seed";
 	private static final String STATIC_SENSOR_COUNT = "static_sensor_count";
 	private static final String DRONE_AGENT_COUNT = "drone_agent_count";
 	private static final String MED_AGENT_COUNT = "med_agent_count";
 	public static final String RESC_AGENT_COUNT = "resc_agent_count";
 
-	private boolean updateGUI = true;
+	/** Replay seeks of more steps run in the background */
+	private static final int FOREGROUND_SEEK_STEPS = 50;
 
-	public static SimulationStatus status = SimulationStatus.PAUSED;
+	private boolean updateGUI = true;
 
 	/** Auto step thread of the frame */
 	private StepThread stepThread = new StepThread();
@@ -67,26 +65,24 @@ public class MainFrame extends javax.swing.JFrame {
 	private javax.swing.JPanel jPanel1;
 	private javax.swing.JPanel jPanel3;
 	private javax.swing.JSlider simulationSpeedSlider;
+	private javax.swing.JSlider replaySlider;
 	private javax.swing.JSpinner rescueAgentCountSpinner;
 	private javax.swing.JSpinner medicalAgentCountSpinner;
 	private javax.swing.JSpinner droneAgentCountSpinner;
 	private javax.swing.JSpinner staticSensorCountSpinner;
 	private world.PaintPanel paintPanel;
-	/** Robots operating on the map */
-	public static ArrayList<Robot> robots = new ArrayList<>();
-	/** Injureds already transported outside by the robots */
-	public static ArrayList<Injured> savedInjureds = new ArrayList<>();
-	private final int MEDICAL_ROBOT_START_MEDICINE_PER_INJURED = 100;
-	public static Cell startCell = null;
 	private static int randomSeed = 0;
-	private static Random generator = new Random(randomSeed);
-
-	/** The map the simulator uses */
-	public static Map map = null;
-	/** The map the robots use */ // (internalWorld)
-	public static Map discovered = null;
-	/** Simulation time */
-	static int time = 0;
+
+	/** The simulation shown by the frame */
+	public static SimulationContext context = null;
+	/** Score currently displayed on the label */
+	private ScoreSnapshot displayedScore = null;
+	/** Journal replayed instead of running the robot controls (null if not replaying) */
+	private EventJournal replayJournal = null;
+	/** True while the replay slider is moved by the program */
+	private boolean updatingReplaySlider = false;
+	/** Replay seeking in the background (null if none) */
+	private SwingWorker<SimulationContext, Integer> seekWorker = null;
 	/** found injured people on the map */
 	public static ArrayList<Injured> foundInjureds = new ArrayList<>();
 	private int btnWidth = 80;
@@ -101,7 +97,7 @@ public class MainFrame extends javax.swing.JFrame {
 
 		// Init auto generated components
 		initComponents();
-		 paintPanel.setMaps(map,discovered,agentPerspectiveCB.isSelected());
+		 paintPanel.setMaps(null,null,agentPerspectiveCB.isSelected());
 
 		// Load all files from the "maps" subfolder
 		mapFileNamesCB.removeAllItems();
@@ -111,7 +107,25 @@ public class MainFrame extends javax.swing.JFrame {
 		// Add files as options to the JComboBox
 
 		String lastMap = "";
-		if (args.length == 6) {
+		if (args.length >= 2 && args[0].equals("replay")) {
+			// Replay a recorded journal
+			try {
+				replayJournal = EventJournal.load(new File(args[1]));
+			} catch (IOException e) {
+				RescueFramework.log(LogLevel.ERROR, "Unable to load journal " + args[1] + ": " + e.getMessage());
+			}
+		}
+
+		if (replayJournal != null) {
+			lastMap = replayJournal.getMapName();
+			rescueAgentCountSpinner.setValue(replayJournal.getRescueCount());
+			medicalAgentCountSpinner.setValue(replayJournal.getMedicalCount());
+			droneAgentCountSpinner.setValue(replayJournal.getDroneCount());
+			staticSensorCountSpinner.setValue(replayJournal.getStaticSensorCount());
+			simulationSpeedSlider.setValue(Settings.getInt(SPEED, 500));
+			replaySlider.setMaximum(replayJournal.getStepCount());
+			replaySlider.setVisible(true);
+		} else if (args.length >= 6) {
 			lastMap = args[0];
 			rescueAgentCountSpinner.setValue(Integer.valueOf(args[1]));
 			medicalAgentCountSpinner.setValue(Integer.valueOf(args[2]));
@@ -120,7 +134,8 @@ public class MainFrame extends javax.swing.JFrame {
 
 			updateGUI = args[5].equals("1");
 			simulationSpeedSlider.setValue(500);
-			randomSeed = parseInt(args[6]);
+			if (args.length >= 7)
+				randomSeed = parseInt(args[6]);
 
 		} else {
 			lastMap = Settings.getString("map", "");
@@ -130,6 +145,7 @@ public class MainFrame extends javax.swing.JFrame {
 			droneAgentCountSpinner.setValue(Settings.getInt(DRONE_AGENT_COUNT, 0));
 			staticSensorCountSpinner.setValue(Settings.getInt(STATIC_SENSOR_COUNT, 0));
 			simulationSpeedSlider.setValue(Settings.getInt(SPEED, 500));
+			randomSeed = Settings.getInt(SEED, 0);
 		}
 		int selectedIndex = -1;
 		for (int i = 0; i < listOfFiles.length; i++) {
@@ -195,34 +211,6 @@ public class MainFrame extends javax.swing.JFrame {
 		 */
 	}
 
-	public static double random() {
-		return generator.nextDouble();
-	}
-
-	public static int nextRandInt(int bound) {
-		return generator.nextInt(bound);
-	}
-
-	public static int randomBetween(int minVal, int maxVal) { return (nextRandInt(maxVal + 1)) + minVal; }
-
-
-	static void removeRandomWall() {
-		if (nextRandInt(100) < 5) {
-			int x = nextRandInt(map.cells.length);
-			int y = nextRandInt(map.cells[x].length);
-
-			ArrayList<Integer> walldirs = new ArrayList<>();
-			for (int i = 0; i < 4; ++i) {
-				if (map.cells[x][y].hasWallEx(i)) {
-					walldirs.add(i);
-				}
-			}
-			if (!walldirs.isEmpty()) {
-				map.cells[x][y].removeWall(walldirs.get(nextRandInt(walldirs.size())));
-			}
-		}
-	}
-
 	/**
 	 * Update the GUI to the latest state of the world
 	 */
@@ -232,10 +220,22 @@ public class MainFrame extends javax.swing.JFrame {
 		paintPanel.repaint();
 
 		// Calculate and display score
-		if (map != null) {
-			String label = map.getTotalScore();
-			jLabel2.setText(label);
+		if (context != null) {
+			// Format the label only if the score changed since the last refresh
+			ScoreSnapshot score = context.getMap().getScore();
+			if (!score.equals(displayedScore)) {
+				displayedScore = score;
+				jLabel2.setText(score.toString());
+			}
+
+			// Follow the replayed time with the slider
+			if (replayJournal != null && seekWorker == null && !replaySlider.getValueIsAdjusting()) {
+				updatingReplaySlider = true;
+				replaySlider.setValue(context.getTime());
+				updatingReplaySlider = false;
+			}
 		} else {
+			displayedScore = null;
 			jLabel2.setText("No simulation.");
 		}
 	}
@@ -257,6 +257,7 @@ public class MainFrame extends javax.swing.JFrame {
 		stepBtn = new javax.swing.JButton();
 		runBtn = new javax.swing.JButton();
 		simulationSpeedSlider = new javax.swing.JSlider();
+		replaySlider = new javax.swing.JSlider();
 		rescueAgentCountSpinner = new javax.swing.JSpinner();
 		medicalAgentCountSpinner = new javax.swing.JSpinner();
 		droneAgentCountSpinner = new javax.swing.JSpinner();
@@ -315,6 +316,14 @@ public class MainFrame extends javax.swing.JFrame {
 			simulationSpeedSliderStateChanged(event);
 		});
 
+		replaySlider.setToolTipText("Replayed step");
+		replaySlider.setMinimum(0);
+		replaySlider.setValue(0);
+		replaySlider.setVisible(false);
+		replaySlider.addChangeListener((ChangeListener) event -> {
+			replaySliderStateChanged(event);
+		});
+
 		rescueAgentCountSpinner.setModel(new javax.swing.SpinnerNumberModel(1, 0, null, 1));
 		rescueAgentCountSpinner.setFocusable(false);
 
@@ -379,6 +388,9 @@ public class MainFrame extends javax.swing.JFrame {
 								javax.swing.GroupLayout.PREFERRED_SIZE)
 						.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
 						.addComponent(agentPerspectiveCB)
+						.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+						.addComponent(replaySlider, javax.swing.GroupLayout.PREFERRED_SIZE, 300,
+								javax.swing.GroupLayout.PREFERRED_SIZE)
 						.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
 						.addContainerGap(284, Short.MAX_VALUE)));
 		jPanel1Layout.setVerticalGroup(jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
@@ -388,6 +400,8 @@ public class MainFrame extends javax.swing.JFrame {
 								.addComponent(agentPerspectiveCB))
 						.addComponent(simulationSpeedSlider, javax.swing.GroupLayout.PREFERRED_SIZE,
 								javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+						.addComponent(replaySlider, javax.swing.GroupLayout.PREFERRED_SIZE,
+								javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
 						.addGroup(jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
 								.addComponent(runBtn, javax.swing.GroupLayout.PREFERRED_SIZE,
 										javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -451,7 +465,6 @@ public class MainFrame extends javax.swing.JFrame {
 	 *            The click event
 	 */
 	private void loadBtnActionPerformed(ActionEvent evt) {// GEN-FIRST:event_jButton1ActionPerformed
-		status = SimulationStatus.PAUSED;
 		paintPanel.finished = false;
 		// Save selected map and agent count
 		String mapString = mapFileNamesCB.getSelectedItem() + "";
@@ -467,103 +480,20 @@ public class MainFrame extends javax.swing.JFrame {
 		Settings.setInt(STATIC_SENSOR_COUNT, staticSensorCount);
 		Settings.save();
 
-		// Load the map from file
-		generator = new Random(randomSeed);
-		discovered = new Map(mapString, rescAgentCount, medAgentCount, droneAgentCount, staticSensorCount);
-		time = 0;
-		if (discovered.injureds != null)
-			discovered.deleteInjureds();
-		if (robots != null)
-			robots.removeAll(robots);
-		if (map != null && !map.injureds.isEmpty())
-			map.injureds.removeAll(map.injureds);
-
-		if (discovered.injureds != null && !discovered.injureds.isEmpty())
-			discovered.injureds.removeAll(discovered.injureds);
-
-		savedInjureds.removeAll(savedInjureds);
-
-		// set the initial version of the robots internal world model
-		AMSService.setInternalWorldModel(discovered);
-
-		map = new Map(mapString, rescAgentCount, medAgentCount, droneAgentCount, staticSensorCount, true);
-
-		 paintPanel.setMaps(map,discovered,agentPerspectiveCB.isSelected());
-		// Init agents
-		if (startCell == null)
-			startCell = map.getCell(0, 0);
-		Cell nextStartCell = startCell;
-
-		for (int i = 0; i < rescAgentCount; i++) {
-			Robot newRobot = new RescueRobot(nextStartCell, discovered);
-			robots.add(newRobot);
-			if (nextStartCell != null) {
-				map.updateRobotPresence(nextStartCell);
-				discovered.updateRobotPresence(nextStartCell);
-				nextStartCell = nextStartCell.getAccessibleNeigbourEx(1);
-				if(nextStartCell ==null)
-					nextStartCell = startCell.getAccessibleNeigbourEx(2);
-			}
-		}
-
-		for (int i = 0; i < medAgentCount; i++) {
-			Robot newRobot = new MedicalRobot(nextStartCell, discovered,
-					MEDICAL_ROBOT_START_MEDICINE_PER_INJURED * map.injureds.size());
-			robots.add(newRobot);
-			if (nextStartCell != null) {
-				map.updateRobotPresence(nextStartCell);
-				discovered.updateRobotPresence(nextStartCell);
-				nextStartCell = nextStartCell.getAccessibleNeigbourEx(1);
-				if(nextStartCell ==null)
-					nextStartCell = startCell.getAccessibleNeigbourEx(2);						
-			}
-		}
-
-		for (int i = 0; i < droneAgentCount; i++) {
-			Robot newRobot = new FlyingDrone(nextStartCell, discovered);
-			robots.add(newRobot);
-			if (nextStartCell != null) {
-				map.updateRobotPresence(nextStartCell);
-				discovered.updateRobotPresence(nextStartCell);
-				nextStartCell = nextStartCell.getAccessibleNeigbourEx(1);
-				if(nextStartCell ==null)
-					nextStartCell = startCell.getAccessibleNeigbourEx(2);
-			}
-		}
-		
-		for (int i = 0; i < staticSensorCount; i++) {
-			Cell staticStartCell = null;
-
-			while (staticStartCell == null) {
-				int xCoord = StaticSensorControl.generateXCoord(map.getWidth(), map.getHeight());
-				int yCoord = StaticSensorControl.generateYCoord(map.getWidth(), map.getHeight());
-
-				xCoord += generator.nextInt(8) - 4;
-				yCoord += generator.nextInt(8) - 4;
-
-				staticStartCell = map.getCell(xCoord, yCoord);
-
-				if (staticStartCell != null && staticStartCell.hasInjuredEx() && staticStartCell.hasRobot()) {
-					staticStartCell = null;
-				}
-			}
-
-			Robot sensor = new StaticSensor(staticStartCell, discovered);
-
-			robots.add(sensor);
-			map.updateRobotPresence(staticStartCell);
-			discovered.updateRobotPresence(staticStartCell);
+		// Start a new simulation from the map file or the replayed journal
+		if (replayJournal != null) {
+			cancelSeek();
+			context = replayJournal.createContext();
+		} else {
+			context = new SimulationContext(randomSeed);
+			context.load(mapString, rescAgentCount, medAgentCount, droneAgentCount, staticSensorCount);
 		}
-
-
-		map.maxEnergy = map.getRobotsEnergyLevel();
+		paintPanel.setMaps(context.getMap(), context.getDiscovered(), agentPerspectiveCB.isSelected());
 
 		// Update the GUI and disable autostep
 		runBtn.setText("Run");
 		if (stepThread != null)
 			stepThread.disable();
-		map.updateAllRobotVisibleCells(true);
-		discovered.updateAllRobotVisibleCells(false);
 
 		RescueFramework.log("Map " + mapString + " loaded, ready to start.");
 
@@ -625,6 +555,111 @@ public class MainFrame extends javax.swing.JFrame {
 		}
 	}// GEN-LAST:event_jSlider1StateChanged
 
+	/**
+	 * The replay slider is moved
+	 *
+	 * @param evt
+	 *            The change event
+	 */
+	private void replaySliderStateChanged(ChangeEvent evt) {
+		if (!updatingReplaySlider && !replaySlider.getValueIsAdjusting() && context != null) {
+			seekReplay(replaySlider.getValue());
+		}
+	}
+
+	/**
+	 * Jump to a step of the replayed journal. The replay continues from the
+	 * shown step or from the nearest snapshot of the journal, whichever is
+	 * closer. Long seeks run in the background behind a progress monitor,
+	 * the shown replay is replaced when they are done.
+	 * 
+	 * @param time
+	 *            The simulation time to show
+	 */
+	private void seekReplay(int time) {
+		cancelSeek();
+
+		boolean forward = time >= context.getTime();
+		int snapshotTime = replayJournal.getSnapshotTime(time);
+		int start = forward ? Math.max(context.getTime(), snapshotTime) : snapshotTime;
+		if (time - start <= FOREGROUND_SEEK_STEPS) {
+			if (!forward || snapshotTime > context.getTime()) {
+				context = replayJournal.createContext(time);
+				paintPanel.setMaps(context.getMap(), context.getDiscovered(), agentPerspectiveCB.isSelected());
+			}
+
+			// Step through the journal quietly
+			context.setQuiet(true);
+			while (context.getTime() < time && stepThread.stepTime(context)) {
+			}
+			context.setQuiet(false);
+			refresh();
+			return;
+		}
+
+		ProgressMonitor monitor = new ProgressMonitor(this, "Seeking step " + time, null, start, time);
+		seekWorker = new SwingWorker<SimulationContext, Integer>() {
+			/** True if the replay finished before the time */
+			private boolean finished = false;
+
+			@Override
+			protected SimulationContext doInBackground() {
+				// The replay is not shown until it is done, the GUI keeps showing the current one
+				SimulationContext replayed = replayJournal.createContext(time);
+				replayed.setQuiet(true);
+				StepThread stepper = new StepThread();
+				while (replayed.getTime() < time && !isCancelled()) {
+					if (!stepper.stepTime(replayed)) {
+						finished = true;
+						break;
+					}
+					publish(replayed.getTime());
+				}
+				replayed.setQuiet(false);
+				return replayed;
+			}
+
+			@Override
+			protected void process(List<Integer> times) {
+				monitor.setProgress(times.get(times.size() - 1));
+				if (monitor.isCanceled())
+					cancel(false);
+			}
+
+			@Override
+			protected void done() {
+				monitor.close();
+				if (seekWorker != this)
+					return;
+				seekWorker = null;
+
+				if (!isCancelled()) {
+					try {
+						context = get();
+						paintPanel.setMaps(context.getMap(), context.getDiscovered(),
+								agentPerspectiveCB.isSelected());
+						if (finished)
+							finish();
+					} catch (InterruptedException | ExecutionException e) {
+						RescueFramework.log(LogLevel.ERROR, "Seeking step " + time + " failed: " + e.getMessage());
+					}
+				}
+				refresh();
+			}
+		};
+		seekWorker.execute();
+	}
+
+	/**
+	 * Stop the replay seeking in the background, the shown replay is kept
+	 */
+	private void cancelSeek() {
+		if (seekWorker != null) {
+			seekWorker.cancel(false);
+			seekWorker = null;
+		}
+	}
+
 	/**
 	 * Mouse clicked on a cell
 	 * 
@@ -646,7 +681,7 @@ public class MainFrame extends javax.swing.JFrame {
 	public void pause() {
 		stepThread.disable();
 		runBtn.setText("Run");
-		status = SimulationStatus.PAUSED;
+		context.setStatus(SimulationStatus.PAUSED);
 	}
 
 	/**
@@ -657,20 +692,19 @@ public class MainFrame extends javax.swing.JFrame {
 		paintPanel.finished = true;
 		paintPanel.repaint();
 		runBtn.setText("Reset");
-		status = SimulationStatus.FINISHED;
+		context.setStatus(SimulationStatus.FINISHED);
 	}
 
 	/**
 	 * Resume the paused autostep thread
 	 */
 	public void resume() {
-		if (status == SimulationStatus.FINISHED) {
+		if (context.getStatus() == SimulationStatus.FINISHED) {
 			loadBtnActionPerformed(null);
 			runBtn.setText("Run");
-			status = SimulationStatus.PAUSED;
 		} else {
 			runBtn.setText("Pause");
-			status = SimulationStatus.RUNNING;
+			context.setStatus(SimulationStatus.RUNNING);
 			stepThread.enable();
 		}
 	}
@@ -684,10 +718,6 @@ public class MainFrame extends javax.swing.JFrame {
 		return agentPerspectiveCB.isSelected();
 	}
 
-	public static int getTime() {
-		return time;
-	}
-
 	/**
 	 * Custom KeyEventDispatcher to cach keyboard event globally in the application
 	 */
@@ -0,0 +1,280 @@
+package rescueframework;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import world.AStarSearch;
+import world.Cell;
+import world.Map;
+import world.MapGenerator;
+import world.Path;
+import world.Robot;
+
+/**
+ * Micro benchmarks of the path finding, the visibility calculation and the
+ * whole simulation step.
+ *
+ * Every benchmark is warmed up first, then measured in several rounds of a
+ * fixed duration. The average time of an operation and its standard deviation
+ * over the rounds are printed per benchmark, map and robot count.
+ */
+public class PerformanceBenchmark {
+    /** Number of steps simulated before measuring, so the robots have explored a part of the map */
+    private static final int EXPLORE_STEPS = 50;
+    /** Number of steps of the full step benchmark per round */
+    private static final int STEP_BENCHMARK_STEPS = 200;
+    /** Number of start/target pairs of the path finding benchmark */
+    private static final int SEARCH_PAIRS = 256;
+
+    /** Warmup time per benchmark */
+    private static int warmupMillis = 1000;
+    /** Duration of a measurement round */
+    private static int roundMillis = 500;
+    /** Number of measurement rounds */
+    private static int rounds = 5;
+
+    /** Results are added here so the measured code cannot be optimized away */
+    private static volatile long sink = 0;
+
+    /**
+     * A measured operation
+     */
+    private interface Operation {
+        /**
+         * Run the operation once
+         *
+         * @param i     Index of the run
+         * @return      Any value depending on the result
+         */
+        long run(int i);
+    }
+
+    /**
+     * Main method of the benchmark
+     *
+     * Arguments: [maps] [robot counts] [warmup ms] [round ms] [rounds]
+     * maps:         comma separated map file names or "all" (default) for every map in the maps folder.
+     *               A map given as WIDTHxHEIGHT (e.g. 512x512) is generated into the maps folder if missing.
+     * robot counts: comma separated number of rescue robots (default 1,2,4)
+     *
+     * @param args      The command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> maps = new ArrayList<>();
+        if (args.length < 1 || args[0].equals("all")) {
+            for (File file : new File("maps").listFiles()) {
+                if (file.isFile()) maps.add(file.getName());
+            }
+            maps.sort(null);
+        } else {
+            for (String map : args[0].split(",")) {
+                maps.add(map.matches("\\d+x\\d+") ? generatedMap(map) : map);
+            }
+        }
+        String[] robotCounts = (args.length >= 2 ? args[1] : "1,2,4").split(",");
+        if (args.length >= 3) warmupMillis = Integer.parseInt(args[2]);
+        if (args.length >= 4) roundMillis = Integer.parseInt(args[3]);
+        if (args.length >= 5) rounds = Integer.parseInt(args[4]);
+
+        RescueFramework.logLevel = LogLevel.OFF;
+
+        System.out.println("benchmark;map;robots;ns_per_op;error");
+        for (String map : maps) {
+            for (String count : robotCounts) {
+                int robots = Integer.parseInt(count);
+                benchmarkSearch(map, robots);
+                benchmarkUnknownPath(map, robots);
+                benchmarkVisibility(map, robots);
+                benchmarkStep(map, robots);
+            }
+        }
+    }
+
+    /**
+     * Returns the generated map of a size, generating it with the default
+     * parameters and seed 0 if it does not exist yet
+     *
+     * @param size      Size of the map as WIDTHxHEIGHT
+     * @return          File name of the generated map
+     */
+    private static String generatedMap(String size) throws IOException {
+        String fileName = "generated_" + size + ".txt";
+        if (!new File("maps", fileName).exists()) {
+            String[] parts = size.split("x");
+            MapGenerator.generate("maps/" + fileName, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), 0);
+        }
+        return fileName;
+    }
+
+    /**
+     * Load the map with rescue robots and let them explore for a while
+     *
+     * @param map       File name of the map
+     * @param robots    Number of rescue robots
+     * @return          The simulation after the exploration steps
+     */
+    private static SimulationContext explore(String map, int robots) {
+        SimulationContext context = new SimulationContext(0);
+        context.load(map, robots, 0, 0, 0);
+        StepThread stepper = new StepThread();
+        for (int i = 0; i < EXPLORE_STEPS && stepper.stepTime(context); i++) {
+        }
+        return context;
+    }
+
+    /**
+     * Benchmark AStarSearch.search and AStarSearch.searchJumpPoints between
+     * the same discovered cells
+     */
+    private static void benchmarkSearch(String map, int robots) {
+        Map discovered = explore(map, robots).getDiscovered();
+
+        // Pick start and target pairs among the discovered cells
+        List<Cell> cells = new ArrayList<>();
+        for (int x = 0; x < discovered.getWidth(); x++) {
+            for (int y = 0; y < discovered.getHeight(); y++) {
+                if (discovered.getCell(x, y).isDiscovered()) cells.add(discovered.getCell(x, y));
+            }
+        }
+        SplittableRandom random = new SplittableRandom(0);
+        Cell[] starts = new Cell[SEARCH_PAIRS];
+        Cell[] targets = new Cell[SEARCH_PAIRS];
+        for (int i = 0; i < SEARCH_PAIRS; i++) {
+            starts[i] = cells.get(random.nextInt(cells.size()));
+            targets[i] = cells.get(random.nextInt(cells.size()));
+        }
+
+        measure("AStarSearch.search", map, robots, i -> {
+            Path path = AStarSearch.search(starts[i % SEARCH_PAIRS], targets[i % SEARCH_PAIRS], Integer.MAX_VALUE);
+            return path == null ? 0 : path.getLength();
+        });
+        measure("AStarSearch.searchJumpPoints", map, robots, i -> {
+            Path path = AStarSearch.searchJumpPoints(starts[i % SEARCH_PAIRS], targets[i % SEARCH_PAIRS], Integer.MAX_VALUE);
+            return path == null ? 0 : path.getLength();
+        });
+    }
+
+    /**
+     * Benchmark Map.getShortestUnknownPath from the robot positions
+     */
+    private static void benchmarkUnknownPath(String map, int robots) {
+        SimulationContext context = explore(map, robots);
+        List<Robot> robotList = context.getRobots();
+
+        measure("Map.getShortestUnknownPath", map, robots, i -> {
+            Robot robot = robotList.get(i % robotList.size());
+            Path path = context.getDiscovered().getShortestUnknownPath(
+                    context.getDiscovered().getCell(robot.getLocation().getX(), robot.getLocation().getY()));
+            return path == null ? 0 : path.getLength();
+        });
+    }
+
+    /**
+     * Benchmark Map.updateAllRobotVisibleCells on the real map
+     */
+    private static void benchmarkVisibility(String map, int robots) {
+        SimulationContext context = explore(map, robots);
+
+        measure("Map.updateAllRobotVisibleCells", map, robots, i -> {
+            context.getMap().updateAllRobotVisibleCells(true);
+            return context.getMap().getTopologyVersion();
+        });
+    }
+
+    /**
+     * Benchmark StepThread.stepTime from the start of the simulation. Loading
+     * the map is not measured.
+     */
+    private static void benchmarkStep(String map, int robots) {
+        StepThread stepper = new StepThread();
+        long deadline = System.nanoTime() + warmupMillis * 1000000L;
+        while (System.nanoTime() < deadline) {
+            runSteps(stepper, map, robots);
+        }
+
+        double[] results = new double[rounds];
+        for (int round = 0; round < rounds; round++) {
+            long elapsed = 0;
+            long steps = 0;
+            while (elapsed < roundMillis * 1000000L) {
+                long[] measured = runSteps(stepper, map, robots);
+                elapsed += measured[0];
+                steps += measured[1];
+            }
+            results[round] = (double) elapsed / steps;
+        }
+        print("StepThread.stepTime", map, robots, results);
+    }
+
+    /**
+     * Load the map and simulate the steps of the step benchmark
+     *
+     * @return          The time spent in the steps (ns) and the number of steps
+     */
+    private static long[] runSteps(StepThread stepper, String map, int robots) {
+        SimulationContext context = new SimulationContext(0);
+        context.load(map, robots, 0, 0, 0);
+
+        long start = System.nanoTime();
+        int steps = 0;
+        while (steps < STEP_BENCHMARK_STEPS) {
+            steps++;
+            if (!stepper.stepTime(context)) break;
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += context.getTime();
+        return new long[] { elapsed, steps };
+    }
+
+    /**
+     * Warm up and measure an operation
+     *
+     * @param name      Name of the benchmark
+     * @param map       File name of the map
+     * @param robots    Number of rescue robots
+     * @param operation The measured operation
+     */
+    private static void measure(String name, String map, int robots, Operation operation) {
+        long result = 0;
+        int i = 0;
+        long deadline = System.nanoTime() + warmupMillis * 1000000L;
+        while (System.nanoTime() < deadline) {
+            result += operation.run(i++);
+        }
+
+        double[] results = new double[rounds];
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            long end = start + roundMillis * 1000000L;
+            long count = 0;
+            long now;
+            do {
+                // Check the clock only every 16 operations
+                for (int j = 0; j < 16; j++) {
+                    result += operation.run(i++);
+                }
+                count += 16;
+                now = System.nanoTime();
+            } while (now < end);
+            results[round] = (double) (now - start) / count;
+        }
+        sink += result;
+        print(name, map, robots, results);
+    }
+
+    /**
+     * Print the average and the standard deviation of the rounds
+     */
+    private static void print(String name, String map, int robots, double[] results) {
+        double sum = 0;
+        for (double value : results) sum += value;
+        double mean = sum / results.length;
+        double squares = 0;
+        for (double value : results) squares += (value - mean) * (value - mean);
+        double deviation = results.length > 1 ? Math.sqrt(squares / (results.length - 1)) : 0;
+        System.out.println(String.format("%s;%s;%d;%.0f;%.0f", name, map, robots, mean, deviation));
+    }
+}
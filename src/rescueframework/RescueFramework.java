@@ -1,7 +1,8 @@
 package rescueframework;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Supplier;
 
 /**
  * Main class of the application
@@ -12,12 +13,26 @@ public class RescueFramework {
         
     public static boolean autoClose = false;
 
+    /** Messages below this level are not logged (OFF disables logging, e.g. for batch runs) */
+    public static volatile LogLevel logLevel = LogLevel.DEBUG;
+    /** Formatter of the log timestamps */
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    /** Background writer of the console log */
+    private static final AsyncLogAppender appender = new AsyncLogAppender(System.out, 4096);
+
     /**
      * Main method of the application
      * @param args      The command line arguments
      */
     public static void main(String[] args) {
         Settings.load("settings.txt");
+        String level = Settings.getString("log_level", LogLevel.DEBUG.name());
+        try {
+            logLevel = LogLevel.valueOf(level);
+        } catch (IllegalArgumentException e) {
+            logLevel = LogLevel.DEBUG;
+            log(LogLevel.WARNING, "Invalid log_level setting " + level + ", using " + logLevel);
+        }
         mainFrame = new MainFrame(args);
         mainFrame.setVisible(true);
     }
@@ -54,11 +69,46 @@ public class RescueFramework {
     }
     
     /**
-     * Log a message with timestamp to the console
+     * Returns true if messages of the level are logged
+     * @param level         The level of the message
+     * @return              True if the message would be written
+     */
+    public static boolean isLoggable(LogLevel level) {
+        return level != LogLevel.OFF && level.compareTo(logLevel) >= 0;
+    }
+
+    /**
+     * Log an info message with timestamp to the console
      * @param message       The message to log to the console
      */
     public static void log(String message) {
-        String timeStamp = new SimpleDateFormat("HH:mm:ss.SSS").format(Calendar.getInstance().getTime());
-        System.out.println("["+timeStamp+"] "+message);
-    }  
+        log(LogLevel.INFO, message);
+    }
+
+    /**
+     * Log a message with timestamp to the console
+     * @param level         The level of the message
+     * @param message       The message to log to the console
+     */
+    public static void log(LogLevel level, String message) {
+        if (!isLoggable(level)) return;
+        appender.append("["+LocalTime.now().format(TIMESTAMP_FORMAT)+"] "+message);
+    }
+
+    /**
+     * Log a message built only if the level is logged
+     * @param level         The level of the message
+     * @param message       Builds the message to log to the console
+     */
+    public static void log(LogLevel level, Supplier<String> message) {
+        if (!isLoggable(level)) return;
+        log(level, message.get());
+    }
+
+    /**
+     * Wait until every logged message is written to the console
+     */
+    public static void flushLog() {
+        appender.flush();
+    }
 }
@@ -0,0 +1,213 @@
+package rescueframework;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import world.AStarSearch;
+import world.Cell;
+import world.Map;
+import world.Path;
+
+/**
+ * Checks AStarSearch.search against the original A* implementation with an
+ * open list searched linearly and closed list kept in array lists.
+ *
+ * The robots explore the maps for a while, then random start and target
+ * pairs of the discovered map are searched by both implementations, part of
+ * them with a maximum distance. The two searches have to agree whether a
+ * path exists, on the length of the path and on whether a robot was in the
+ * way (Path.isAroundRobots). The mismatches found are printed and the
+ * process exits with status 1 if there is any.
+ */
+public class SearchChecker {
+    /** Number of mismatches printed in detail */
+    private static final int PRINTED_MISMATCHES = 20;
+
+    /**
+     * A node of the original search
+     */
+    private static class Node {
+        /** The cell of the node */
+        final Cell cell;
+        /** Path length from the start */
+        final int sumG;
+        /** Heuristic distance to the target */
+        final int h;
+        /** The node the cell was reached from */
+        final Node parent;
+
+        Node(Cell cell, int sumG, int h, Node parent) {
+            this.cell = cell;
+            this.sumG = sumG;
+            this.h = h;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Result of the original search
+     */
+    private static class Result {
+        /** Length of the path (number of cells) or -1 if none was found */
+        int length = -1;
+        /** True if a cell was skipped because of a robot */
+        boolean robotInTheWay = false;
+    }
+
+    /**
+     * Main method of the checker
+     *
+     * Arguments: [maps] [robots] [steps] [pairs]
+     * maps:     comma separated map file names or "all" (default) for every map in the maps folder
+     * robots:   number of rescue robots exploring the map (default 4)
+     * steps:    number of steps simulated before the searches (default 50)
+     * pairs:    number of start and target pairs per map (default 2000)
+     *
+     * @param args      The command line arguments
+     */
+    public static void main(String[] args) {
+        List<String> maps = new ArrayList<>();
+        if (args.length < 1 || args[0].equals("all")) {
+            for (File file : new File("maps").listFiles()) {
+                if (file.isFile()) maps.add(file.getName());
+            }
+            maps.sort(null);
+        } else {
+            for (String map : args[0].split(",")) maps.add(map);
+        }
+        int robots = args.length >= 2 ? Integer.parseInt(args[1]) : 4;
+        int steps = args.length >= 3 ? Integer.parseInt(args[2]) : 50;
+        int pairs = args.length >= 4 ? Integer.parseInt(args[3]) : 2000;
+
+        RescueFramework.logLevel = LogLevel.OFF;
+
+        long mismatches = 0;
+        System.out.println("map;pairs;paths;around_robots;mismatches");
+        for (String fileName : maps) {
+            SimulationContext context = new SimulationContext(0);
+            context.load(fileName, robots, 0, 0, 0);
+            StepThread stepper = new StepThread();
+            for (int i = 0; i < steps && stepper.stepTime(context); i++) {
+            }
+
+            long[] result = check(context.getDiscovered(), pairs);
+            mismatches += result[2];
+            System.out.println(fileName + ";" + pairs + ";" + result[0] + ";" + result[1] + ";" + result[2]);
+        }
+
+        if (mismatches > 0) {
+            System.out.println(mismatches + " mismatches found");
+            System.exit(1);
+        }
+        System.out.println("No mismatches found");
+    }
+
+    /**
+     * Search random pairs of the map with both implementations
+     *
+     * @param map       The discovered map to search on
+     * @param pairs     Number of start and target pairs
+     * @return          The number of paths found, of paths around robots and of mismatches
+     */
+    private static long[] check(Map map, int pairs) {
+        // Start from discovered cells, the targets may be undiscovered
+        List<Cell> starts = new ArrayList<>();
+        for (int x = 0; x < map.getWidth(); x++) {
+            for (int y = 0; y < map.getHeight(); y++) {
+                if (map.getCell(x, y).isDiscovered()) starts.add(map.getCell(x, y));
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(0);
+        long paths = 0, aroundRobots = 0, mismatches = 0;
+        for (int i = 0; i < pairs; i++) {
+            Cell start = starts.get(random.nextInt(starts.size()));
+            Cell target = random.nextInt(4) == 0
+                    ? map.getCell(random.nextInt(map.getWidth()), random.nextInt(map.getHeight()))
+                    : starts.get(random.nextInt(starts.size()));
+            // Every fourth search is limited to a distance
+            int maxDistance = random.nextInt(4) == 0 ? 1 + random.nextInt(map.getWidth() + map.getHeight()) : -1;
+
+            Path path = AStarSearch.search(start, target, maxDistance);
+            Result expected = search(start, target, maxDistance);
+            int length = path == null ? -1 : path.getLength();
+            boolean robotInTheWay = path != null && path.isAroundRobots();
+            if (length != -1) paths++;
+            if (robotInTheWay) aroundRobots++;
+
+            if (length != expected.length || (length != -1 && robotInTheWay != expected.robotInTheWay)) {
+                if (mismatches++ < PRINTED_MISMATCHES) {
+                    System.out.println("Mismatch from " + start.getX() + "x" + start.getY() + " to " + target.getX() + "x"
+                            + target.getY() + " max distance " + maxDistance + ": length " + length + " instead of "
+                            + expected.length + ", robot in the way " + robotInTheWay + " instead of "
+                            + expected.robotInTheWay);
+                }
+            }
+        }
+        return new long[] { paths, aroundRobots, mismatches };
+    }
+
+    /**
+     * The original A* search: the open list is scanned for the node with the
+     * best F (the first one on ties), both lists are scanned for the
+     * neighbours
+     *
+     * @param start         The start cell to search from
+     * @param target        The target cell to search to
+     * @param maxDistance   The maximum length of the path to consider
+     * @return              The length of the path found and the robot flag
+     */
+    private static Result search(Cell start, Cell target, int maxDistance) {
+        Result result = new Result();
+        if (maxDistance > 0 && start.rawDistanceFrom(target) > maxDistance) return result;
+
+        ArrayList<Node> openList = new ArrayList<>();
+        ArrayList<Node> closedList = new ArrayList<>();
+        openList.add(new Node(start, 0, start.rawDistanceFrom(target), null));
+
+        while (openList.size() > 0) {
+            Node selected = openList.get(0);
+            for (int i = 1; i < openList.size(); i++) {
+                if (openList.get(i).sumG + openList.get(i).h < selected.sumG + selected.h) selected = openList.get(i);
+            }
+
+            if (maxDistance > 0 && selected.sumG > maxDistance) return result;
+
+            if (selected.cell.equals(target)) {
+                result.length = 0;
+                for (Node node = selected; node != null; node = node.parent) result.length++;
+                return result;
+            }
+
+            for (int dir = 0; dir < 4; dir++) {
+                Cell neighbour = selected.cell.getAccessibleNeigbour(dir);
+                if (neighbour == null) continue;
+                boolean isTarget = neighbour.equals(target);
+                if (!(neighbour.isDiscovered() || isTarget) || !neighbour.isSeenSinceDest()) continue;
+                if (!isTarget && (neighbour.hasObstacle() || neighbour.hasRobot())) {
+                    result.robotInTheWay |= neighbour.hasRobot();
+                    continue;
+                }
+                if (contains(openList, neighbour) || contains(closedList, neighbour)) continue;
+
+                openList.add(new Node(neighbour, selected.sumG + 1, neighbour.rawDistanceFrom(target), selected));
+            }
+
+            openList.remove(selected);
+            closedList.add(selected);
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if a node of the list is on the cell
+     */
+    private static boolean contains(List<Node> list, Cell cell) {
+        for (Node node : list) {
+            if (node.cell.equals(cell)) return true;
+        }
+        return false;
+    }
+}
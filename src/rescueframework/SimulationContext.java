@@ -0,0 +1,430 @@
+package rescueframework;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import rescueagents.AMSService;
+import rescueagents.StaticSensorControl;
+import world.Cell;
+import world.FlyingDrone;
+import world.Injured;
+import world.Map;
+import world.MedicalRobot;
+import world.RescueRobot;
+import world.Robot;
+import world.StaticSensor;
+import world.WorldSnapshot;
+
+/**
+ * State of a single simulation run: the maps, the robots, the random
+ * generator and the clock. Every object of the run reaches this state through
+ * its context, so several runs can live in the same JVM.
+ */
+public class SimulationContext {
+	/** Medicine of the medical robots per injured on the map */
+	private static final int MEDICAL_ROBOT_START_MEDICINE_PER_INJURED = 100;
+
+	/** The real state of the world */
+	private Map map = null;
+	/** The world as discovered by the robots */
+	private Map discovered = null;
+	/** Robots of the simulation */
+	private ArrayList<Robot> robots = new ArrayList<>();
+	/** Injureds transported to an exit */
+	private ArrayList<Injured> savedInjureds = new ArrayList<>();
+	/** Number of injureds transported to an exit alive */
+	private int savedAliveCount = 0;
+	/** Number of injureds transported to an exit dead */
+	private int savedDeadCount = 0;
+	/** Energy used by the robots */
+	private int consumedEnergy = 0;
+	/** Start cell of the robots */
+	private Cell startCell = null;
+	/** Random stream of the injured health levels */
+	private final SplittableRandom injuryRandom;
+	/** Random stream of the agent placement and battery levels */
+	private final SplittableRandom agentRandom;
+	/** Random stream of the wall collapses */
+	private final SplittableRandom wallRandom;
+	/** Current simulation time */
+	private int time = 0;
+	/** Status of the simulation */
+	private MainFrame.SimulationStatus status = MainFrame.SimulationStatus.PAUSED;
+	/** Coordination service of the robots */
+	private AMSService amsService = null;
+	/** Journal the run is recorded to (null if not recorded) */
+	private EventJournal journal = null;
+	/** Journal the run is replayed from (null if the robots decide) */
+	private EventJournal replay = null;
+	/** True if the steps are not logged, like a replay seeking to a step */
+	private boolean quiet = false;
+
+	/**
+	 * State of the simulation at a step, the state a replay continues from.
+	 * The random streams and the robot controls are not part of it, the
+	 * replay takes the walls and the actions from the journal.
+	 */
+	static class Snapshot {
+		/** Simulation time of the snapshot */
+		final int time;
+		/** Position of the next record of the replayed journal */
+		final int journalPosition;
+		/** Indices of the saved injureds on the world map */
+		final int[] savedInjureds;
+		/** Counters of the score */
+		final int savedAliveCount, savedDeadCount, consumedEnergy;
+		/** State of the maps and the robots */
+		final WorldSnapshot world;
+
+		Snapshot(SimulationContext context, int journalPosition) {
+			time = context.time;
+			this.journalPosition = journalPosition;
+			savedInjureds = new int[context.savedInjureds.size()];
+			for (int i = 0; i < savedInjureds.length; i++)
+				savedInjureds[i] = context.map.injureds.indexOf(context.savedInjureds.get(i));
+			savedAliveCount = context.savedAliveCount;
+			savedDeadCount = context.savedDeadCount;
+			consumedEnergy = context.consumedEnergy;
+			world = new WorldSnapshot(context);
+		}
+	}
+
+	/**
+	 * Default constructor. Every random stream of the simulation is split from
+	 * the seed, so runs with the same seed are identical and the streams do
+	 * not depend on each other.
+	 *
+	 * @param randomSeed
+	 *            Seed of the random streams
+	 */
+	public SimulationContext(int randomSeed) {
+		SplittableRandom seedRandom = new SplittableRandom(randomSeed);
+		injuryRandom = seedRandom.split();
+		agentRandom = seedRandom.split();
+		wallRandom = seedRandom.split();
+	}
+
+	/**
+	 * Load the map and place the agents to start the simulation
+	 *
+	 * @param mapString
+	 *            File name of the map in the maps folder
+	 * @param rescAgentCount
+	 *            Number of rescue robots
+	 * @param medAgentCount
+	 *            Number of medical robots
+	 * @param droneAgentCount
+	 *            Number of drones
+	 * @param staticSensorCount
+	 *            Number of static sensors
+	 */
+	public void load(String mapString, int rescAgentCount, int medAgentCount, int droneAgentCount,
+			int staticSensorCount) {
+		// Load the map from file, the unexplored world is built from the same parse
+		map = new Map(this, mapString, rescAgentCount, medAgentCount, droneAgentCount, staticSensorCount, true);
+		discovered = new Map(this, map);
+
+		// set the initial version of the robots internal world model
+		amsService = new AMSService(discovered);
+
+		// Init agents
+		if (startCell == null)
+			startCell = map.getCell(0, 0);
+		Cell nextStartCell = startCell;
+
+		for (int i = 0; i < rescAgentCount; i++) {
+			Robot newRobot = new RescueRobot(nextStartCell, discovered);
+			robots.add(newRobot);
+			if (nextStartCell != null) {
+				map.updateRobotPresence(nextStartCell);
+				discovered.updateRobotPresence(nextStartCell);
+				nextStartCell = nextStartCell.getAccessibleNeigbourEx(1);
+				if(nextStartCell ==null)
+					nextStartCell = startCell.getAccessibleNeigbourEx(2);
+			}
+		}
+
+		for (int i = 0; i < medAgentCount; i++) {
+			Robot newRobot = new MedicalRobot(nextStartCell, discovered,
+					MEDICAL_ROBOT_START_MEDICINE_PER_INJURED * map.injureds.size());
+			robots.add(newRobot);
+			if (nextStartCell != null) {
+				map.updateRobotPresence(nextStartCell);
+				discovered.updateRobotPresence(nextStartCell);
+				nextStartCell = nextStartCell.getAccessibleNeigbourEx(1);
+				if(nextStartCell ==null)
+					nextStartCell = startCell.getAccessibleNeigbourEx(2);
+			}
+		}
+
+		for (int i = 0; i < droneAgentCount; i++) {
+			Robot newRobot = new FlyingDrone(nextStartCell, discovered);
+			robots.add(newRobot);
+			if (nextStartCell != null) {
+				map.updateRobotPresence(nextStartCell);
+				discovered.updateRobotPresence(nextStartCell);
+				nextStartCell = nextStartCell.getAccessibleNeigbourEx(1);
+				if(nextStartCell ==null)
+					nextStartCell = startCell.getAccessibleNeigbourEx(2);
+			}
+		}
+
+		for (int i = 0; i < staticSensorCount; i++) {
+			Cell staticStartCell = null;
+
+			while (staticStartCell == null) {
+				int xCoord = StaticSensorControl.generateXCoord(this, map.getWidth(), map.getHeight());
+				int yCoord = StaticSensorControl.generateYCoord(this, map.getWidth(), map.getHeight());
+
+				xCoord += agentRandom.nextInt(8) - 4;
+				yCoord += agentRandom.nextInt(8) - 4;
+
+				staticStartCell = map.getCell(xCoord, yCoord);
+
+				if (staticStartCell != null && staticStartCell.hasInjuredEx() && staticStartCell.hasRobot()) {
+					staticStartCell = null;
+				}
+			}
+
+			Robot sensor = new StaticSensor(staticStartCell, discovered);
+
+			robots.add(sensor);
+			map.updateRobotPresence(staticStartCell);
+			discovered.updateRobotPresence(staticStartCell);
+		}
+
+
+		map.maxEnergy = map.getRobotsEnergyLevel();
+		map.updateAllRobotVisibleCells(true);
+		discovered.updateAllRobotVisibleCells(false);
+	}
+
+	/**
+	 * Remove a random wall with 5% probability
+	 */
+	void removeRandomWall() {
+		if (wallRandom.nextInt(100) < 5) {
+			int x = wallRandom.nextInt(map.cells.length);
+			int y = wallRandom.nextInt(map.cells[x].length);
+
+			ArrayList<Integer> walldirs = new ArrayList<>();
+			for (int i = 0; i < 4; ++i) {
+				if (map.cells[x][y].hasWallEx(i)) {
+					walldirs.add(i);
+				}
+			}
+			if (!walldirs.isEmpty()) {
+				int direction = walldirs.get(wallRandom.nextInt(walldirs.size()));
+				boolean junk = wallRandom.nextInt(100) < 66;
+				map.cells[x][y].removeWall(direction, junk);
+				if (journal != null)
+					journal.wallRemoved(x, y, direction, junk);
+			}
+		}
+	}
+
+	public SplittableRandom getInjuryRandom() {
+		return injuryRandom;
+	}
+
+	public SplittableRandom getAgentRandom() {
+		return agentRandom;
+	}
+
+	public SplittableRandom getWallRandom() {
+		return wallRandom;
+	}
+
+	/**
+	 * Advance the simulation clock by one step
+	 */
+	void advanceTime() {
+		time++;
+		if (journal != null)
+			journal.step(time);
+		if (replay != null)
+			replay.beginStep(time);
+	}
+
+	/**
+	 * Record the steps of the run in a journal
+	 *
+	 * @param journal
+	 *            The journal to record to
+	 */
+	public void recordTo(EventJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Take the walls and actions of the run from a journal instead of the
+	 * random generator and the robot controls
+	 *
+	 * @param replay
+	 *            The journal to replay
+	 */
+	void replayFrom(EventJournal replay) {
+		this.replay = replay;
+	}
+
+	EventJournal getReplay() {
+		return replay;
+	}
+
+	/**
+	 * Turn the logging of the steps off or on again
+	 *
+	 * @param quiet
+	 *            True to step without logging
+	 */
+	void setQuiet(boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	boolean isQuiet() {
+		return quiet;
+	}
+
+	/**
+	 * Copy the state of the simulation
+	 *
+	 * @param journalPosition
+	 *            Position of the next record of the replayed journal
+	 * @return The snapshot of the current step
+	 */
+	Snapshot snapshot(int journalPosition) {
+		return new Snapshot(this, journalPosition);
+	}
+
+	/**
+	 * Continue the simulation from a snapshot of a simulation loaded with the
+	 * same map and agents
+	 *
+	 * @param snapshot
+	 *            The snapshot to restore
+	 */
+	void restore(Snapshot snapshot) {
+		time = snapshot.time;
+		savedInjureds.clear();
+		for (int index : snapshot.savedInjureds)
+			savedInjureds.add(map.injureds.get(index));
+		savedAliveCount = snapshot.savedAliveCount;
+		savedDeadCount = snapshot.savedDeadCount;
+		consumedEnergy = snapshot.consumedEnergy;
+		snapshot.world.restore(this);
+	}
+
+	/**
+	 * Register the action of a robot in the journal
+	 *
+	 * @param robot
+	 *            Index of the robot
+	 * @param action
+	 *            The action of the robot
+	 */
+	void actionTaken(int robot, Action action) {
+		if (journal != null)
+			journal.action(robot, action);
+	}
+
+	/**
+	 * Register the changed state of an injured in the journal, or check it
+	 * against the replayed journal
+	 *
+	 * @param injured
+	 *            The changed injured
+	 */
+	void injuredChanged(Injured injured) {
+		if (journal == null && replay == null)
+			return;
+		int index = map.injureds.indexOf(injured);
+		if (journal != null)
+			journal.injuredChanged(index, injured);
+		if (replay != null)
+			replay.checkInjured(index, injured);
+	}
+
+	public int getTime() {
+		return time;
+	}
+
+	public MainFrame.SimulationStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(MainFrame.SimulationStatus status) {
+		this.status = status;
+	}
+
+	public Map getMap() {
+		return map;
+	}
+
+	public Map getDiscovered() {
+		return discovered;
+	}
+
+	public ArrayList<Robot> getRobots() {
+		return robots;
+	}
+
+	public ArrayList<Injured> getSavedInjureds() {
+		return savedInjureds;
+	}
+
+	/**
+	 * Register an injured transported to an exit
+	 *
+	 * @param injured
+	 *            The saved injured
+	 */
+	void addSavedInjured(Injured injured) {
+		savedInjureds.add(injured);
+		// Saved injureds do not lose health any more
+		if (injured.isAlive()) {
+			savedAliveCount++;
+		} else {
+			savedDeadCount++;
+		}
+	}
+
+	public int getSavedAliveCount() {
+		return savedAliveCount;
+	}
+
+	public int getSavedDeadCount() {
+		return savedDeadCount;
+	}
+
+	/**
+	 * Register energy used by a robot
+	 *
+	 * @param amount
+	 *            The used energy
+	 */
+	public void consumeEnergy(int amount) {
+		consumedEnergy += amount;
+	}
+
+	public int getConsumedEnergy() {
+		return consumedEnergy;
+	}
+
+	public Cell getStartCell() {
+		return startCell;
+	}
+
+	/**
+	 * Set the start cell of the robots (called while loading the map)
+	 *
+	 * @param startCell
+	 *            The start cell
+	 */
+	public void setStartCell(Cell startCell) {
+		this.startCell = startCell;
+	}
+
+	public AMSService getAMSService() {
+		return amsService;
+	}
+}
@@ -1,6 +1,7 @@
 package rescueframework;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 import javax.swing.SwingUtilities;
 
@@ -61,17 +62,47 @@ public class StepThread extends Thread {
 		timeLeft = 0;
 	}
 
-	public void stepTime() {
+	/**
+	 * Make one time step of the simulation shown by the GUI
+	 * 
+	 * @return False if no robot moved and the simulation is finished
+	 */
+	public boolean stepTime() {
+		return stepTime(MainFrame.context);
+	}
+
+	/**
+	 * Make one time step of the simulation
+	 * 
+	 * @param context
+	 *            The simulation to step
+	 * @return False if no robot moved and the simulation is finished
+	 */
+	public boolean stepTime(SimulationContext context) {
+		// Simulations not shown by the GUI (like a replay seeking in the background) leave it alone
+		boolean shown = context == MainFrame.context;
+		EventJournal replay = context.getReplay();
+		if (replay != null && !replay.hasNextStep()) {
+			if (shown)
+				RescueFramework.finish();
+			log(context, LogLevel.INFO, "End of the replayed journal.");
+			return false;
+		}
 
 		// RescueFramework.map.stepTime(true);
-		MainFrame.time++;
-		RescueFramework.log(" ---  Step " + MainFrame.time + "");
+		context.advanceTime();
+		log(context, LogLevel.DEBUG, () -> " ---  Step " + context.getTime());
 
-		MainFrame.removeRandomWall();
+		if (replay != null) {
+			replay.removeWalls(context);
+		} else {
+			context.removeRandomWall();
+		}
+		context.getMap().updateChangedRobotVisibleCells(true);
 
 		// Calculate injured states
-		for (int i = 0; i < MainFrame.map.injureds.size(); i++) {
-			Injured injured = MainFrame.map.injureds.get(i);
+		for (int i = 0; i < context.getMap().injureds.size(); i++) {
+			Injured injured = context.getMap().injureds.get(i);
 			if (!injured.isSaved()) {
 				int prevHealth = injured.getHealth();
 				if (prevHealth > 0) {
@@ -82,43 +113,53 @@ public class StepThread extends Thread {
 		}
 
 		// Display robot paths
-		MainFrame.map.displayPaths.clear();
+		context.getMap().displayPaths.clear();
 		// long start = System.currentTimeMillis();
 		boolean movingRobot = false;
-		for (int i = 0; i < MainFrame.robots.size(); i++) {
-			Robot robot = MainFrame.robots.get(i);
+		for (int i = 0; i < context.getRobots().size(); i++) {
+			Robot robot = context.getRobots().get(i);
 			
 			if (robot.getBatteryLifeTime() <= 0) {
 				// Don't remove the robot, just disable it.
-				// MainFrame.discovered.getRobots().remove(robot);
-				// MainFrame.robots.remove(robot);
-				robot.visibilityRange = -1;
-				RescueFramework.log(robot.getName() + " is out of energy.");
+				// context.getDiscovered().getRobots().remove(robot);
+				// context.getRobots().remove(robot);
+				if (robot.visibilityRange != -1) {
+					robot.visibilityRange = -1;
+					context.getMap().updateRobotVisibleCells(robot, true);
+					context.getDiscovered().updateRobotVisibleCells(robot, false);
+				}
+				log(context, LogLevel.DEBUG, () -> robot.getName() + " is out of energy.");
 				continue;
 			}
 
 			Action stepResult = Action.IDLE;
-			try {
-				stepResult = robot.step();
-			} catch (Exception e) {
-				RescueFramework.log("Exception in robot.step(): " + e.getMessage());
-				e.printStackTrace();
-				if (RescueFramework.autoClose) {
-					RescueFramework.log("Batch run terminated on exception.");
-					System.exit(-1);
+			if (replay != null) {
+				stepResult = replay.nextAction(i);
+			} else {
+				try {
+					stepResult = robot.step();
+				} catch (Exception e) {
+					log(context, LogLevel.ERROR, "Exception in robot.step(): " + e.getMessage());
+					e.printStackTrace();
+					if (RescueFramework.autoClose) {
+						log(context, LogLevel.ERROR, "Batch run terminated on exception.");
+						RescueFramework.flushLog();
+						System.exit(-1);
+					}
 				}
+				context.actionTaken(i, stepResult);
 			}
 			if (stepResult == Action.IDLE) {
 				if (Type.SENSOR == robot.getType()) {
 					robot.decreaseBatteryLifeTime(1);
 				}
 				if(Type.SENSOR != robot.getType()) {
-					RescueFramework.log(robot.getName() + " @ " + robot.getLocation().toString() + " -> sleep");
+					log(context, LogLevel.DEBUG, () -> robot.getName() + " @ " + robot.getLocation() + " -> sleep");
 				}
 			} else if (stepResult == Action.STEP_UP || stepResult == Action.STEP_RIGHT 
 					|| stepResult == Action.STEP_DOWN || stepResult == Action.STEP_LEFT) {
-				RescueFramework.log(
-						robot.getName() + " @ " + robot.getLocation().toString() + " -> " + stepResult);
+				final Action move = stepResult;
+				log(context, LogLevel.DEBUG, () -> robot.getName() + " @ " + robot.getLocation() + " -> " + move);
 				
 				if(Type.ROBOT == robot.getType()) {
 					robot.decreaseBatteryLifeTime(2); //moving costs 2 units of energy for a robot
@@ -127,36 +168,38 @@ public class StepThread extends Thread {
 				}
 				
 				Cell dest = null;
-				if (robot.getLocation().accessNeigbours[stepResult.getValue()] != null) 
+				if (robot.getLocation().getAccessibleNeigbourEx(stepResult.getValue()) != null) 
 					dest = robot.getLocation().getAccessibleNeigbour(stepResult.getValue());
 				 else
-					RescueFramework.log("Move failed: " + stepResult + " is inaccessible.");
+					log(context, LogLevel.WARNING, () -> "Move failed: " + move + " is inaccessible.");
 
 				if (dest != null) {
-					final Robot robotAtThisCell = getRobotAtThisCell(MainFrame.robots, dest);
+					final Cell destination = dest;
+					final Robot robotAtThisCell = getRobotAtThisCell(context.getRobots(), dest);
 					
 					if (dest.hasObstacleEx() && Type.ROBOT == robot.getType()) {
-						RescueFramework.log("Move failed: " + dest.getX() + " x " + dest.getY()
-								+ " is occupied by an obstacle.");
+						log(context, LogLevel.WARNING, () -> "Move failed: " + destination.getX() + " x "
+								+ destination.getY() + " is occupied by an obstacle.");
 					} else if (robotAtThisCell != null
 							&& Type.ROBOT == robotAtThisCell.getType()
 							&& Type.ROBOT == robot.getType()) {
-						RescueFramework.log("Move failed: " + dest.getX() + " x " + dest.getY()
-								+ " is occupied by a robot.");
+						log(context, LogLevel.WARNING, () -> "Move failed: " + destination.getX() + " x "
+								+ destination.getY() + " is occupied by a robot.");
 					} else {
 						// Change location
 						Cell previousCell = robot.getLocation();
 						robot.setCell(dest);
-						MainFrame.map.updateRobotPresence(previousCell);
-						MainFrame.discovered.updateRobotPresence(previousCell);
-						MainFrame.map.updateRobotPresence(dest);
-						MainFrame.discovered.updateRobotPresence(dest);
-
-						// Update robot visibility and GUI
-
-						MainFrame.map.updateAllRobotVisibleCells(true);
-						MainFrame.discovered.updateAllRobotVisibleCells(false);
-						RescueFramework.refresh();
+						context.getMap().updateRobotPresence(previousCell);
+						context.getDiscovered().updateRobotPresence(previousCell);
+						context.getMap().updateRobotPresence(dest);
+						context.getDiscovered().updateRobotPresence(dest);
+
+						// Update the visibility of the moved robot and the GUI
+						context.getMap().updateRobotVisibleCells(robot, true);
+						context.getDiscovered().updateRobotVisibleCells(robot, false);
+						context.getDiscovered().updateChangedRobotVisibleCells(false);
+						if (shown)
+							RescueFramework.refresh();
 						movingRobot = true;
 						dest = null;
 					}
@@ -173,44 +216,46 @@ public class StepThread extends Thread {
 					if (!robot.getLocation().hasInjuredEx()) {
 
 						if (robot.getLocation().isExit()) {
-							RescueFramework.log(robot.getName() + " @ " + robot.getLocation().toString()
+							log(context, LogLevel.DEBUG, () -> robot.getName() + " @ " + robot.getLocation()
 									+ " -> puts down injured on exit cell");
 							Injured savedInjured = robot.getInjured();
 							savedInjured.id=robot.getInjured().id;
 							int index=-1;
 							
-							for (Injured iter : MainFrame.discovered.injureds) {															
+							for (Injured iter : context.getDiscovered().injureds) {															
 								if (iter.id== robot.getInjured().id) {
-									index=MainFrame.discovered.injureds.indexOf(iter);
+									index=context.getDiscovered().injureds.indexOf(iter);
 								}
 							}
 							if (index > -1) {							
-								MainFrame.discovered.removeInjured(MainFrame.discovered.injureds.get(index));
-								MainFrame.discovered.injureds.remove(index);
+								context.getDiscovered().removeInjured(context.getDiscovered().injureds.get(index));
+								context.getDiscovered().injureds.remove(index);
 								robot.setInjured(null);
 								savedInjured.setSaved();
-								MainFrame.savedInjureds.add(savedInjured);	
+								context.addSavedInjured(savedInjured);	
+								context.injuredChanged(savedInjured);
 							}				
 						} else {
-							RescueFramework.log(robot.getName() + " @ " + robot.getLocation().toString()
+							log(context, LogLevel.DEBUG, () -> robot.getName() + " @ " + robot.getLocation()
 									+ " -> puts down injured");
 							int x = robot.getLocation().getX();
 							int y = robot.getLocation().getY();
-							MainFrame.discovered.cells[x][y].setInjured(robot.getInjured());
+							context.getDiscovered().cells[x][y].setInjured(robot.getInjured());
 							robot.getInjured().setLocation(robot.getLocation());
 							robot.getLocation().setInjured(robot.getInjured());
+							context.injuredChanged(robot.getInjured());
 							robot.setInjured(null);
 						}
 
 					} else {
-						RescueFramework.log(robot.getName() + " @ " + robot.getLocation().toString()
+						log(context, LogLevel.WARNING, () -> robot.getName() + " @ " + robot.getLocation()
 								+ " -> unable to put down injured, the cell already has one!");
 					}
 
 				} else if (robot.getLocation().hasInjuredEx()) {
 					// Pick up injured
 
-					RescueFramework.log(robot.getName() + " @ " + robot.getLocation().toString()
+					log(context, LogLevel.DEBUG, () -> robot.getName() + " @ " + robot.getLocation()
 							+ " -> picks up injured");
 					Injured injured = robot.getLocation().getInjured();
 					int x = robot.getLocation().getX();
@@ -218,8 +263,9 @@ public class StepThread extends Thread {
 					robot.setInjured(injured);
 					injured.getLocation().setInjured(null);					
 					injured.setLocation(null);
-					MainFrame.discovered.cells[x][y].setInjured(null);
-					MainFrame.map.cells[x][y].setInjured(null);
+					context.getDiscovered().cells[x][y].setInjured(null);
+					context.getMap().cells[x][y].setInjured(null);
+					context.injuredChanged(injured);
 				}
 
 			} else if (stepResult == Action.HEAL && Type.ROBOT == robot.getType()) {
@@ -231,18 +277,20 @@ public class StepThread extends Thread {
 					if (robot.getLocation().hasInjuredEx()) {
 						Injured injured = robot.getLocation().getInjured();
 						robot.useMedicine(injured);
+						context.injuredChanged(injured);
 
 					} else {
-						RescueFramework.log(robot.getName() + " @ " + robot.getLocation().toString()
+						log(context, LogLevel.WARNING, () -> robot.getName() + " @ " + robot.getLocation()
 								+ " -> healing failed: no injured on cell");
 					}
 				} else {
-					RescueFramework.log(robot.getName() + " @ " + robot.getLocation().toString()
+					log(context, LogLevel.WARNING, () -> robot.getName() + " @ " + robot.getLocation()
 							+ " -> healing failed: out of medicine");
 				}
 			} else if (stepResult != null) {
-				RescueFramework.log(robot.getName() + " @ " + robot.getLocation().toString()
-						+ " -> invalid step action: " + stepResult);
+				final Action action = stepResult;
+				log(context, LogLevel.WARNING, () -> robot.getName() + " @ " + robot.getLocation()
+						+ " -> invalid step action: " + action);
 			}
 
 			/*
@@ -259,16 +307,43 @@ public class StepThread extends Thread {
 		// long end = System.currentTimeMillis();
 		// RescueFramework.log("Robot decision time: "+(end-start)+" ms");
 
+		// Let the robots notice changes in their unchanged view
+		context.getMap().copyObservedCells();
+		context.getDiscovered().updateChangedRobotVisibleCells(false);
+
+		if (replay != null)
+			replay.stepReplayed(context);
+
 		if (!movingRobot) {
-			RescueFramework.finish();
-			RescueFramework.log("No moving robot. Simulation is finished.");
-			RescueFramework.log(MainFrame.map.getTotalScore());
+			if (shown)
+				RescueFramework.finish();
+			log(context, LogLevel.INFO, "No moving robot. Simulation is finished.");
+			log(context, LogLevel.INFO, context.getMap().getTotalScore());
 			if (RescueFramework.autoClose) {
+				RescueFramework.flushLog();
 				System.exit(0);
 			}
 		}
 
-		RescueFramework.refresh();
+		if (shown)
+			RescueFramework.refresh();
+		return movingRobot;
+	}
+
+	/**
+	 * Log a message of a step unless the simulation runs quietly
+	 */
+	private static void log(SimulationContext context, LogLevel level, String message) {
+		if (!context.isQuiet())
+			RescueFramework.log(level, message);
+	}
+
+	/**
+	 * Log a message of a step built only if it is logged
+	 */
+	private static void log(SimulationContext context, LogLevel level, Supplier<String> message) {
+		if (!context.isQuiet())
+			RescueFramework.log(level, message);
 	}
 
 	private Robot getRobotAtThisCell(List<Robot> robots, Cell cell) {
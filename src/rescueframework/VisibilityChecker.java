@@ -0,0 +1,120 @@
+package rescueframework;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import world.Cell;
+import world.Map;
+import world.VisibilityTemplate;
+
+/**
+ * Checks that the visibility templates give the same visible cells as
+ * Map.checkCellVisibility.
+ *
+ * For every range, every cell of the maps is taken as the robot position and
+ * every offset of the template that is on the map is compared. The maps are
+ * checked as loaded and again after walls were removed at random, like the
+ * walls destroyed during a simulation. The mismatches found are printed and
+ * the process exits with status 1 if there is any.
+ */
+public class VisibilityChecker {
+    /** Number of mismatches printed in detail */
+    private static final int PRINTED_MISMATCHES = 20;
+
+    /**
+     * Main method of the checker
+     *
+     * Arguments: [maps] [max range] [wall rounds]
+     * maps:         comma separated map file names or "all" (default) for every map in the maps folder
+     * max range:    the ranges 0..max range are checked (default 12)
+     * wall rounds:  number of rounds with walls removed at random (default 3)
+     *
+     * @param args      The command line arguments
+     */
+    public static void main(String[] args) {
+        List<String> maps = new ArrayList<>();
+        if (args.length < 1 || args[0].equals("all")) {
+            for (File file : new File("maps").listFiles()) {
+                if (file.isFile()) maps.add(file.getName());
+            }
+            maps.sort(null);
+        } else {
+            for (String map : args[0].split(",")) maps.add(map);
+        }
+        int maxRange = args.length >= 2 ? Integer.parseInt(args[1]) : 12;
+        int wallRounds = args.length >= 3 ? Integer.parseInt(args[2]) : 3;
+
+        RescueFramework.logLevel = LogLevel.OFF;
+
+        long mismatches = 0;
+        System.out.println("map;round;checks;mismatches");
+        for (String fileName : maps) {
+            Map map = new Map(new SimulationContext(0), fileName, 0, 0, 0, 0, false);
+            SplittableRandom random = new SplittableRandom(0);
+            for (int round = 0; round <= wallRounds; round++) {
+                if (round > 0) removeWalls(map, random);
+
+                long[] result = check(map, maxRange);
+                mismatches += result[1];
+                System.out.println(fileName + ";" + round + ";" + result[0] + ";" + result[1]);
+            }
+        }
+
+        if (mismatches > 0) {
+            System.out.println(mismatches + " mismatches found");
+            System.exit(1);
+        }
+        System.out.println("No mismatches found");
+    }
+
+    /**
+     * Compare the templates of the ranges with Map.checkCellVisibility on
+     * every cell of the map
+     *
+     * @param map       The map to check
+     * @param maxRange  The largest range checked
+     * @return          The number of checks and the number of mismatches
+     */
+    private static long[] check(Map map, int maxRange) {
+        long checks = 0;
+        long mismatches = 0;
+        for (int range = 0; range <= maxRange; range++) {
+            VisibilityTemplate template = VisibilityTemplate.forRange(range);
+            for (int x = 0; x < map.getWidth(); x++) {
+                for (int y = 0; y < map.getHeight(); y++) {
+                    for (int i = 0; i < template.size(); i++) {
+                        int targetX = x + template.getOffsetX(i);
+                        int targetY = y + template.getOffsetY(i);
+                        if (targetX < 0 || targetY < 0 || targetX >= map.getWidth() || targetY >= map.getHeight()) continue;
+
+                        checks++;
+                        boolean expected = map.checkCellVisibility(x, y, targetX, targetY);
+                        if (template.isVisible(map, x, y, i) != expected) {
+                            if (mismatches++ < PRINTED_MISMATCHES) {
+                                System.out.println("Mismatch at range " + range + " from " + x + "x" + y + " to "
+                                        + targetX + "x" + targetY + ": checkCellVisibility gives " + expected);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new long[] { checks, mismatches };
+    }
+
+    /**
+     * Remove about a third of the walls of the map at random, without junk
+     *
+     * @param map       The map to change
+     * @param random    The random source
+     */
+    private static void removeWalls(Map map, SplittableRandom random) {
+        for (int i = 0; i < map.getWidth() * map.getHeight() / 3; i++) {
+            Cell cell = map.getCell(random.nextInt(map.getWidth()), random.nextInt(map.getHeight()));
+            int direction = random.nextInt(4);
+            if (cell.hasWall(direction)) cell.removeWall(direction, false);
+        }
+    }
+}
@@ -1,18 +1,24 @@
 package world;
 
 import java.awt.Color;
-import java.util.ArrayList;
 
 import rescueframework.RescueFramework;
 
 /**
- * Static class performing A* search
+ * Static class performing A* search with the path planner of the calling thread
  */
 public class AStarSearch {
-    /** Open list of the nodes */
-    static ArrayList<AStarCell> openList = new ArrayList<>();
-    /** Closed list of the nodes */
-    static ArrayList<AStarCell> closedList = new ArrayList<>();
+    /** Search state of the calling thread */
+    private static final ThreadLocal<PathPlanner> planner = ThreadLocal.withInitial(PathPlanner::new);
+    
+    /**
+     * Return the path planner owned by the calling thread
+     * 
+     * @return              The path planner of the calling thread
+     */
+    public static PathPlanner getPlanner() {
+        return planner.get();
+    }
     
     /**
      * Find path between start and target no longer than maxDistance
@@ -24,9 +30,7 @@ public class AStarSearch {
      * @return              A Path if exists between start and target or NULL
      */
     public static Path search(Cell start, Cell target, int maxDistance, Color color) {
-        Path result = search(start,target, maxDistance, false);
-        if (result != null) result.setColor(color);
-        return result;
+        return getPlanner().search(start, target, maxDistance, color);
     }
     
     /**
@@ -38,188 +42,39 @@ public class AStarSearch {
      * @return              A Path if exists between start and target or NULL
      */
     public static Path search(Cell start, Cell target, int maxDistance) {
-    	return search(start, target, maxDistance, false);
+    	return getPlanner().search(start, target, maxDistance);
     }
     
     /**
-     * Find path between start and target no longer than maxDistance.
-     * Gives path through obstacles and other robots.
+     * Find path between start and target no longer than maxDistance with
+     * jump point search. The path is a shortest one, the path of search may
+     * occasionally be longer. It is marked as leading around robots if the
+     * search met one, like the path of search.
      * 
      * @param start         The start cell to search from
      * @param target        The target cell to search to
      * @param maxDistance   The maximum length of the path to consider
-     * @param color         Color of the path
      * @return              A Path if exists between start and target or NULL
      */
-    public static Path searchPathForDrone(Cell start, Cell target, int maxDistance, Color color) {
-    	Path result = search(start,target, maxDistance, true);
-        if (result != null) result.setColor(color);
-        return result;
-    }
-    
-
-    private static Path search(Cell start, Cell target, int maxDistance, boolean isPathForDrone) {
-    	isPathForDrone=false;
-        // Ignore targets too far
-        if (maxDistance >0 && start.rawDistanceFrom(target) > maxDistance) return null;
-        
-        // Try trivial solutions first
-        /*Path trivialPath = trivialSearch(start,target);
-        if (trivialPath != null) return trivialPath;*/
-        
-        // Disable console logging
-        boolean verbose = false; 
-        if (verbose) RescueFramework.log("AStarSearch between "+start.getX()+"x"+start.getY()+" and "+target.getX()+"x"+target.getY()+" max distance "+maxDistance);
-        
-        // Init open and closed lists
-        openList.clear();
-        closedList.clear();
-        
-        // Init the start cell and add to the open list
-        AStarCell startCell = new AStarCell(start, 0, heuristics(start,target), null);
-        openList.add(startCell);
-        
-        // Loop while the open list is not empty
-        int iteration = 0;
-        while (openList.size()>0) {
-            iteration++;
-            if (verbose) {
-                System.out.print("--- Iteration #"+iteration+". Openlist: ");
-                RescueFramework.log(listToString(openList));
-                System.out.print("Closed list: ");
-                RescueFramework.log(listToString(closedList));
-            }
-            
-            // Choose next node
-            int bestIndex = 0;
-            double bestF = openList.get(bestIndex).getF();
-            for (int i=1; i<openList.size();i++) {
-                if (openList.get(i).getF()<bestF) {                    
-                    bestIndex = i;
-                    bestF = openList.get(i).getF();
-                }
-            }
-            
-            // Expand node with best F
-            AStarCell selectedCell = openList.get(bestIndex);
-            if (verbose) RescueFramework.log("  Processing node "+selectedCell.getCell().getX()+" x "+selectedCell.getCell().getY()+" ("+(Math.round(100*(selectedCell.getSumG()+selectedCell.getH()))/100d)+")");
-            
-            // Check max distance constraint
-            if (maxDistance>0 && selectedCell.getSumG()>maxDistance) {
-                if (verbose) RescueFramework.log("    Max distance reached ("+maxDistance+"), giving up!");
-                return null;
-            }
-            
-            // Check if target reached
-            if (selectedCell.getCell().equals(target)) {
-                if (verbose) RescueFramework.log("    Target reached: "+target.getX()+" x "+target.getY()+". Building path back:");
-                Path result = new Path();
-                while (selectedCell != null) {
-                    if (verbose) System.out.print(selectedCell.getCell().getX()+" x "+selectedCell.getCell().getY()+" --> ");
-                    result.addFirstCell(selectedCell.getCell());
-                    selectedCell = selectedCell.getParent();
-                }
-                if (verbose) RescueFramework.log("");
-                return result;
-            }
-            
-            // Add known neighbours to the open list
-            for (int dir = 0; dir<4; dir++) {
-                Cell possibleNeighbour = selectedCell.getCell().getAccessibleNeigbour(dir);
-                if (possibleNeighbour != null) {
-                    if ((possibleNeighbour.isDiscovered() || possibleNeighbour.equals(target)) && possibleNeighbour.seenSinceDest){
-                        //if (possibleNeighbour.equals(target) || !possibleNeighbour.hasInjured()) {
-                            if (possibleNeighbour.equals(target) || !possibleNeighbour.hasObstacle() || isPathForDrone) {
-                                if (possibleNeighbour.equals(target) 
-                                		|| !possibleNeighbour.hasRobot()
-                                		|| isPathForDrone) {
-                                
-                                    boolean skip = false;
-
-                                    // Check on open list
-                                    for (int i=0; i<openList.size(); i++) {
-                                        if (openList.get(i).getCell().equals(possibleNeighbour)) {
-                                            skip = true;
-                                            break;
-                                        }
-                                    }
-                                    if (skip) {
-                                        if (verbose) RescueFramework.log("    Already on open list.");
-                                        continue;
-                                    }
-
-                                    // Check on closed list
-                                    for (int i=0; i<closedList.size(); i++) {
-                                        if (closedList.get(i).getCell().equals(possibleNeighbour)) {
-                                            skip = true;
-                                            break;
-                                        }
-                                    }
-                                    if (skip) {
-                                        if (verbose) RescueFramework.log("    Already on closed list.");
-                                        continue;
-                                    }
-
-                                    // Add possible neighbour to open list
-                                    if (verbose) RescueFramework.log("    Adding to open list!");
-                                    openList.add(new AStarCell(possibleNeighbour, selectedCell.getSumG()+1, heuristics(possibleNeighbour,target), selectedCell));
-                                } else {
-                                    if (verbose) RescueFramework.log("    Occupied by a robot."); 
-                                }
-                            } else {
-                               if (verbose) RescueFramework.log("    Occupied by an obstacle."); 
-                            }
-                        /*} else {
-                           if (verbose) RescueFramework.log("    Occupied by a injured."); 
-                        }*/
-                    } else {
-                        if (verbose) RescueFramework.log("    Not discovered yet.");
-                    }
-                } else {
-                     if (verbose) RescueFramework.log("    No neighbour in dir "+dir+".");
-                }
-            }
-            
-            // Add selected node to the closed list
-            openList.remove(selectedCell);
-            closedList.add(selectedCell);
-        }
-        
-        return null;
+    public static Path searchJumpPoints(Cell start, Cell target, int maxDistance) {
+        return getPlanner().searchJumpPoints(start, target, maxDistance);
     }
     
     /**
-     * Calculate heuristics value between two cells
+     * Find path between start and target no longer than maxDistance.
+     * Gives path through obstacles and other robots.
      * 
-     * @param c1        The first cell
-     * @param c2        The second cell
-     * @return          The heuristics value between the two cells
-     */
-    private static double heuristics(Cell c1, Cell c2) {
-        //return Math.sqrt(Math.pow(c1.getX()-c2.getX(),2)+Math.pow(c1.getY()-c2.getY(),2));
-        return Math.abs(c1.getX()-c2.getX())+Math.abs(c1.getY()-c2.getY());
-    }
-    
-    /**
-     * Print node list as String for console debugging 
-     * @param list      The list of cells
-     * @return          The string list of the cells
+     * @param start         The start cell to search from
+     * @param target        The target cell to search to
+     * @param maxDistance   The maximum length of the path to consider
+     * @param color         Color of the path
+     * @return              A Path if exists between start and target or NULL
      */
-    public static String listToString(ArrayList<AStarCell> list) {
-        String result = "";
-        int g; 
-        double h;
-        for (int i=0; i<list.size(); i++) {
-            AStarCell cell = list.get(i);
-            g = cell.getSumG();
-            h = cell.getH();
-                    
-            result = result + cell.getCell().getX()+"x"+cell.getCell().getY()+"("+g+"+"+(Math.round(100*(h))/100d)+"="+(Math.round(100*(g+h))/100d)+"), ";
-        }
-        return result;
+    public static Path searchPathForDrone(Cell start, Cell target, int maxDistance, Color color) {
+    	return getPlanner().searchPathForDrone(start, target, maxDistance, color);
     }
     
-    
+
     public static Path trivialSearch(Cell start, Cell target) {
         if (start.getX() == target.getX()) {
             if (start.getY() > target.getY()) {
@@ -0,0 +1,118 @@
+package world;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+import rescueframework.LogLevel;
+import rescueframework.RescueFramework;
+import rescueframework.SimulationContext;
+
+/**
+ * Binary map format, an alternative of the text format for large maps.
+ *
+ * Layout (big endian):
+ * <ul>
+ * <li>header: magic (int), version (int), width (int), height (int)</li>
+ * <li>walls: one nibble per cell in x*height+y order, low nibble first</li>
+ * <li>special cells: count (int), then index (int) and MapReader code (byte)
+ * of the exits, start cells and doors in row order</li>
+ * <li>floors: count (int), then x, y and color index (int each)</li>
+ * <li>obstacle images: count (int), then length (short) and UTF-8 bytes</li>
+ * <li>obstacles: count (int), then index (int) and image number (short)</li>
+ * <li>injureds: count (int), then index (int) and health (short)</li>
+ * </ul>
+ * The file is memory mapped for loading and every table is read in one pass.
+ */
+public class BinaryMapFile {
+	/** First bytes of a binary map file */
+	static final int MAGIC = 0x524d4150;
+	/** Format version of the binary map file */
+	static final int VERSION = 1;
+	/** File name extension of binary maps */
+	public static final String EXTENSION = ".bmap";
+
+	/**
+	 * Main method of the converter
+	 *
+	 * Arguments: input output
+	 * Both files are in the maps folder, the output is written in the binary
+	 * format if its name ends with .bmap and in the text format otherwise.
+	 *
+	 * @param args
+	 *            The command line arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: BinaryMapFile <input map> <output map>");
+			System.exit(1);
+		}
+
+		RescueFramework.logLevel = LogLevel.WARNING;
+		Map map = new Map(new SimulationContext(0), args[0], 0, 0, 0, 0, true);
+		if (!map.isLoaded()) {
+			// Nothing is written for a missing or broken input
+			RescueFramework.flushLog();
+			System.err.println("Unable to convert map " + args[0]);
+			System.exit(1);
+		}
+		map.saveToFile(args[1]);
+	}
+
+	/**
+	 * Returns the name of the binary version of a map file
+	 *
+	 * @param fileName
+	 *            Name of the map file
+	 * @return The name with the binary extension
+	 */
+	public static String binaryName(String fileName) {
+		if (fileName.endsWith(EXTENSION))
+			return fileName;
+		int dot = fileName.lastIndexOf('.');
+		return (dot > 0 ? fileName.substring(0, dot) : fileName) + EXTENSION;
+	}
+
+	/**
+	 * Returns true if the file starts with the binary map header
+	 *
+	 * @param file
+	 *            The map file
+	 * @return False for text maps
+	 */
+	static boolean isBinary(File file) {
+		if (file.length() < 8)
+			return false;
+		try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+			return input.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Map a binary map file into memory and check its header
+	 *
+	 * @param file
+	 *            The map file
+	 * @return The contents of the file positioned after the magic and version
+	 * @throws IOException
+	 *             If the file cannot be read or has an unknown version
+	 */
+	static ByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC)
+				throw new IOException(file + " is not a binary map");
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException(file + " has unsupported version " + version);
+			return buffer;
+		}
+	}
+}
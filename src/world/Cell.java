@@ -2,101 +2,105 @@ package world;
 
 import interfaces.CellInfo;
 import rescueframework.Action;
-import rescueframework.MainFrame;
+import rescueframework.LogLevel;
 import rescueframework.RescueFramework;
 
 /**
  * Cell object that the map is built up from
  */
 public class Cell implements CellInfo {
+	/** The map the cell belongs to */
+	Map map;
+	/** Storage of the cell state (shared by all cells of the map) */
+	private final CellGrid grid;
 	/** Coordinates of the cell */
 	private int x, y;
-	/** Walls in all four directions */
-	boolean[] walls = new boolean[4];
-	/** Image file of the obstacle on the cell */
-	private String obstacleImage = "";
-	/** True if the cell is already discovered by the robots */
-	private boolean discovered = false;
+	/** Index of the cell in the grid of its map */
+	private final int index;
 	/** The injured on this cell */
 	Injured injured = null;
-	/** True if the robot currently sees this cell */
-	private boolean robotSees = false;
-	/** Type of the cell (0 = default; 1 = exit; 2 = start) */
-	private int cellType = 0;
-	/** Color code index of the floor */
-	private int floorColorIndex = -1;
-	/** True if the cell is a door (stopping flooded floor coloring) */
-	private boolean door = false;
-	/** List of neighbour cell in all directions */
-	public Cell layoutNeigbours[] = new Cell[4];
-	/** List of accessible cells in all direction */
-	public Cell accessNeigbours[] = new Cell[4];
-
-	private boolean hasRobot = false;
-	/** Determines if it has a destroyed wall or not */
-	public boolean destroyed = false;
-	/** True if the cell has been seen since it's wall destroyed */
-	public boolean seenSinceDest = true;
-	public int destr_dir = 4;
+
+	/** X offsets of the four directions (up, right, down, left) */
+	private static final int[] DX = { 0, 1, 0, -1 };
+	/** Y offsets of the four directions (up, right, down, left) */
+	private static final int[] DY = { -1, 0, 1, 0 };
 
 	public void copy(Cell into) {
 		if (into != null) {
-			into.x = x;
-			into.y = y;
-			for (int i = 0; i < 4; i++)
-				if (walls[i])
-					into.walls[i] = true;
-				else
-					into.walls[i] = false;
-			into.obstacleImage = obstacleImage;
-			into.discovered = discovered;
-			into.robotSees = robotSees;
-			into.cellType = cellType;
-			into.floorColorIndex = floorColorIndex;
-			into.door = door;
-			into.hasRobot = hasRobot;
-			into.destroyed = destroyed;
-			into.destr_dir = destr_dir;
-			into.seenSinceDest = seenSinceDest;
+			CellGrid intoGrid = into.grid;
+			int intoIndex = into.index;
+			boolean topologyChanged = into.isSeenSinceDest() != isSeenSinceDest()
+					|| intoGrid.getObstacle(intoIndex) != grid.getObstacle(index)
+					|| intoGrid.getWalls(intoIndex) != grid.getWalls(index);
+			// The first copy only fills in a blank cell, the layout changes if a known wall or an exit changes
+			boolean layoutChanged = intoGrid.getCellType(intoIndex) != grid.getCellType(index)
+					|| (into.isDiscovered() && (intoGrid.getWalls(intoIndex) != grid.getWalls(index)
+							|| intoGrid.door.get(intoIndex) != grid.door.get(index)));
+
+			intoGrid.setWalls(intoIndex, grid.getWalls(index));
+			intoGrid.setObstacle(intoIndex, grid.getObstacle(index));
+			into.setDiscovered(isDiscovered());
+			intoGrid.setCellType(intoIndex, grid.getCellType(index));
+			intoGrid.setFloorColor(intoIndex, grid.getFloorColor(index));
+			intoGrid.setFlag(intoGrid.door, intoIndex, grid.door.get(index));
+			intoGrid.setFlag(intoGrid.robot, intoIndex, grid.robot.get(index));
+			intoGrid.setFlag(intoGrid.destroyed, intoIndex, grid.destroyed.get(index));
+			intoGrid.setDestroyedDirection(intoIndex, grid.getDestroyedDirection(index));
+			intoGrid.setFlag(intoGrid.unseenSinceDest, intoIndex, grid.unseenSinceDest.get(index));
+
+			if (layoutChanged)
+				into.map.layoutChanged();
+			if (topologyChanged) {
+				into.map.topologyChanged(into);
+				into.map.wallChanged(into);
+			}
 		}
 	}
 
 	/**
 	 * Constructor of the cell
 	 * 
+	 * @param map      The map the cell belongs to
 	 * @param x        X coordinate of the cell on the map
 	 * @param y        Y coordinate of the cell on the map
 	 * @param wallCode Binary representation of the walls around this cell
 	 */
-	public Cell(int x, int y, String wallCode) {
+	public Cell(Map map, int x, int y, String wallCode) {
+		this(map, x, y, wallCode.equals("X") ? MapReader.EXIT
+				: wallCode.equals("S") ? MapReader.START
+						: wallCode.equals("_") ? MapReader.DOOR
+								: wallCode.equals(".") ? 0 : Integer.parseInt(wallCode, 16) & 0xF);
+	}
+
+	/**
+	 * Constructor of the cell from a parsed cell code
+	 * 
+	 * @param map  The map the cell belongs to
+	 * @param x    X coordinate of the cell on the map
+	 * @param y    Y coordinate of the cell on the map
+	 * @param code The wall bits or the EXIT, START or DOOR code of MapReader
+	 */
+	Cell(Map map, int x, int y, int code) {
+		this.map = map;
+		this.grid = map.grid;
 		this.x = x;
 		this.y = y;
-		int wallCodeInt = -1;
+		this.index = x * map.getHeight() + y;
 
-		// Determine special cell marks or wall code
-		if (wallCode.equals("X")) {
+		// Determine special cell marks
+		if ((code & MapReader.EXIT) != 0) {
 			// Exit cell - type=1
-			wallCodeInt = 0;
-			cellType = 1;
-		} else if (wallCode.equals("S")) {
+			grid.setCellType(index, 1);
+		} else if ((code & MapReader.START) != 0) {
 			// Start cell - type=2
-			wallCodeInt = 0;
-			cellType = 2;
-		} else if (wallCode.equals("_")) {
+			grid.setCellType(index, 2);
+		} else if ((code & MapReader.DOOR) != 0) {
 			// Door cell
-			door = true;
-			wallCodeInt = 0;
-		} else if (wallCode.equals(".")) {
-			wallCodeInt = 0;
-		} else {
-			wallCodeInt = Integer.parseInt(wallCode, 16);
+			grid.setFlag(grid.door, index, true);
 		}
 
-		// Set the wall code based on bitmask compare
-		walls[0] = (wallCodeInt & 1) > 0;
-		walls[1] = (wallCodeInt & 2) > 0;
-		walls[2] = (wallCodeInt & 4) > 0;
-		walls[3] = (wallCodeInt & 8) > 0;
+		// The wall code bits are the directions 0-3
+		grid.setWalls(index, code & 0xF);
 	}
 
 	/**
@@ -109,7 +113,7 @@ public class Cell implements CellInfo {
 		if (isDiscovered()) {
 			return hasWallEx(direction);
 		} else {
-			RescueFramework.log("Access denied: calling hasWall for undiscovered cell!");
+			RescueFramework.log(LogLevel.WARNING, "Access denied: calling hasWall for undiscovered cell!");
 			return false;
 		}
 	}
@@ -121,7 +125,7 @@ public class Cell implements CellInfo {
 		while (direction > 3)
 			direction -= 4;
 		// Return the wall
-		return walls[direction];
+		return grid.hasWall(index, direction);
 	}
 
 	/**
@@ -130,7 +134,7 @@ public class Cell implements CellInfo {
 	 * @return The type code of the cell
 	 */
 	protected int getCellType() {
-		return cellType;
+		return grid.getCellType(index);
 	}
 
 	/**
@@ -142,31 +146,31 @@ public class Cell implements CellInfo {
 	 * @param left   Left neighbour cell
 	 */
 	protected void shareWalls(Cell top, Cell right, Cell bottom, Cell left) {
-		// Save neighbours
-		layoutNeigbours[0] = top;
-		layoutNeigbours[1] = right;
-		layoutNeigbours[2] = bottom;
-		layoutNeigbours[3] = left;
+		// The neighbours are looked up on the map from now on
+		grid.linked.set(index);
 
 		// Add local walls to neighbours
-		if (walls[0] && top != null)
+		if (hasWallEx(0) && top != null)
 			top.addWall(2);
-		if (walls[1] && right != null)
+		if (hasWallEx(1) && right != null)
 			right.addWall(3);
-		if (walls[2] && bottom != null)
+		if (hasWallEx(2) && bottom != null)
 			bottom.addWall(0);
-		if (walls[3] && left != null)
+		if (hasWallEx(3) && left != null)
 			left.addWall(1);
 	}
 
 	/**
-	 * Determine accessible neighbour cells
+	 * Return the neighbour cell in a direction. Cells have no neighbours until
+	 * their walls are shared with them.
+	 * 
+	 * @param direction The direction requested
+	 * @return The neighbour or null if there is none
 	 */
-	protected void updateAccessibleNeighbours() {
-		for (int i = 0; i < 4; i++)
-			if (!walls[i])
-				accessNeigbours[i] = layoutNeigbours[i];
-
+	Cell getLayoutNeighbour(int direction) {
+		if (!grid.linked.get(index))
+			return null;
+		return map.getCell(x + DX[direction], y + DY[direction]);
 	}
 
 	/**
@@ -175,7 +179,7 @@ public class Cell implements CellInfo {
 	 * @param direction The direction to add the wall to
 	 */
 	protected void addWall(int direction) {
-		walls[direction] = true;
+		setWall(direction, true);
 	}
 
 	/**
@@ -184,35 +188,42 @@ public class Cell implements CellInfo {
 	 * @param direction The direction to toggle wall to
 	 */
 	protected void toggleWall(int direction) {
-		walls[direction] = !walls[direction];
-		Cell neighbour = layoutNeigbours[direction];
+		setWall(direction, !hasWallEx(direction));
+		Cell neighbour = getLayoutNeighbour(direction);
 		if (neighbour != null) {
-			neighbour.setWall((direction + 2) % 4, walls[direction]);
+			neighbour.setWall((direction + 2) % 4, hasWallEx(direction));
 		}
 	}
 
 	/**
-	 * Remove cell wall
+	 * Remove cell wall, leaving junk on the cell with 66% probability
 	 * 
 	 * @param direction The direction to remove wall from
 	 */
 	public void removeWall(int direction) {
-		destroyed = true;
-		seenSinceDest = false;
-		destr_dir = direction;
-		walls[direction] = false;
+		removeWall(direction, map.getContext().getWallRandom().nextInt(100) < 66);
+	}
+
+	/**
+	 * Remove cell wall
+	 * 
+	 * @param direction The direction to remove wall from
+	 * @param junk      True to leave junk on the cell (if it is empty)
+	 */
+	public void removeWall(int direction, boolean junk) {
+		grid.setFlag(grid.destroyed, index, true);
+		grid.setFlag(grid.unseenSinceDest, index, true);
+		grid.setDestroyedDirection(index, direction);
+		setWall(direction, false);
 		// this.hide();
-		Cell neighbour = layoutNeigbours[direction];
+		Cell neighbour = getLayoutNeighbour(direction);
 		if (neighbour != null) {
 			neighbour.setWall((direction + 2) % 4, false);
-			neighbour.destroyed = true;
-
-			updateAccessibleNeighbours();
-			neighbour.updateAccessibleNeighbours();
+			neighbour.setDestroyed();
 		}
 
-		if (MainFrame.nextRandInt(100) < 66) {
-			if (!hasRobot && !hasInjured()) {
+		if (junk) {
+			if (!hasRobot() && !hasInjured()) {
 				setObstacleImage("junk10");
 			}
 		}
@@ -225,7 +236,49 @@ public class Cell implements CellInfo {
 	 * @param value     The new wall value
 	 */
 	protected void setWall(int direction, boolean value) {
-		walls[direction] = value;
+		if (grid.hasWall(index, direction) != value) {
+			grid.setWalls(index, grid.getWalls(index) ^ (1 << direction));
+			if (value)
+				map.layoutChanged();
+			else
+				map.wallRemoved(this, direction);
+			map.topologyChanged(this);
+			map.wallChanged(this);
+		}
+	}
+
+	/**
+	 * Returns true if a wall of the cell has been destroyed
+	 * 
+	 * @return True if the cell has a destroyed wall
+	 */
+	public boolean isDestroyed() {
+		return grid.destroyed.get(index);
+	}
+
+	/**
+	 * Mark the cell as having a destroyed wall
+	 */
+	protected void setDestroyed() {
+		grid.setFlag(grid.destroyed, index, true);
+	}
+
+	/**
+	 * Returns the direction of the wall destroyed on this cell
+	 * 
+	 * @return The direction or 4 if no wall of this cell was destroyed
+	 */
+	public int getDestroyedDirection() {
+		return grid.getDestroyedDirection(index);
+	}
+
+	/**
+	 * Returns true if the cell has been seen since its wall was destroyed
+	 * 
+	 * @return False if the cell was not seen since its wall was destroyed
+	 */
+	public boolean isSeenSinceDest() {
+		return !grid.unseenSinceDest.get(index);
 	}
 
 	/**
@@ -238,16 +291,15 @@ public class Cell implements CellInfo {
 		if (isDiscovered()) {
 			return getAccessibleNeigbourEx(direction);
 		} else {
-			RescueFramework.log("Access denied: calling getAccessibleNeigbour for undiscovered cell!");
+			RescueFramework.log(LogLevel.WARNING, "Access denied: calling getAccessibleNeigbour for undiscovered cell!");
 			return null;
 		}
 	}
 
 	public Cell getAccessibleNeigbourEx(Integer direction) {
-		if (direction == null)
+		if (direction == null || grid.hasWall(index, direction))
 			return null;
-		updateAccessibleNeighbours();
-		return accessNeigbours[direction];
+		return getLayoutNeighbour(direction);
 	}
 
 	/**
@@ -256,7 +308,7 @@ public class Cell implements CellInfo {
 	 * @return True if the cell is a door
 	 */
 	protected boolean isDoor() {
-		return door;
+		return grid.door.get(index);
 	}
 
 	/**
@@ -265,9 +317,9 @@ public class Cell implements CellInfo {
 	 * @param colorIndex The floor color index
 	 */
 	protected void setFloorColorIndex(int colorIndex) {
-		floorColorIndex = colorIndex;
+		grid.setFloorColor(index, colorIndex);
 		if (colorIndex > -1)
-			discovered = false;
+			setDiscovered(false);
 	}
 
 	/**
@@ -276,7 +328,7 @@ public class Cell implements CellInfo {
 	 * @return The floor color index
 	 */
 	protected int getFloorColorIndex() {
-		return floorColorIndex;
+		return grid.getFloorColor(index);
 	}
 
 	/**
@@ -285,7 +337,11 @@ public class Cell implements CellInfo {
 	 * @param obstacleImage The new obstacle image name
 	 */
 	protected void setObstacleImage(String obstacleImage) {
-		this.obstacleImage = obstacleImage;
+		short id = CellGrid.obstacleId(obstacleImage);
+		if (grid.getObstacle(index) != id) {
+			grid.setObstacle(index, id);
+			map.topologyChanged(this);
+		}
 	}
 
 	/**
@@ -294,24 +350,47 @@ public class Cell implements CellInfo {
 	 * @return The obstacle image name
 	 */
 	protected String getObstacleImage() {
-		return obstacleImage;
+		return CellGrid.obstacleName(grid.getObstacle(index));
 	}
 
 	/**
 	 * Mark the cell as discovered
 	 */
 	protected void discover() {
-		discovered = true;
-		seenSinceDest = true;
+		setDiscovered(true);
+		markSeenSinceDest();
 	}
 
 	/**
 	 * Remove the discovered mark
 	 */
 	protected void hide() {
-		if (discovered) {
-			discovered = false;
-			seenSinceDest = true;
+		if (isDiscovered()) {
+			setDiscovered(false);
+			markSeenSinceDest();
+		}
+	}
+
+	/**
+	 * Change the discovered mark and keep the frontier of the map up to date
+	 * 
+	 * @param value The new discovered mark
+	 */
+	private void setDiscovered(boolean value) {
+		if (grid.discovered.get(index) != value) {
+			grid.setFlag(grid.discovered, index, value);
+			map.updateFrontier(this);
+			map.topologyChanged(this);
+		}
+	}
+
+	/**
+	 * Mark the cell as seen since its wall was destroyed
+	 */
+	protected void markSeenSinceDest() {
+		if (grid.unseenSinceDest.get(index)) {
+			grid.setFlag(grid.unseenSinceDest, index, false);
+			map.topologyChanged(this);
 		}
 	}
 
@@ -321,7 +400,7 @@ public class Cell implements CellInfo {
 	 * @return True if the cell is alredy discovered
 	 */
 	public boolean isDiscovered() {
-		return discovered;
+		return grid.discovered.get(index);
 	}
 
 	/**
@@ -343,7 +422,7 @@ public class Cell implements CellInfo {
 		if (isDiscovered()) {
 			return getInjuredEx();
 		} else {
-			RescueFramework.log("Access denied: calling getInjured for undiscovered cell!");
+			RescueFramework.log(LogLevel.WARNING, "Access denied: calling getInjured for undiscovered cell!");
 			return null;
 		}
 	}
@@ -359,11 +438,11 @@ public class Cell implements CellInfo {
 	 */
 	protected void setRobotVisibility(boolean newValue) {
 		// Save the new value
-		robotSees = newValue;
+		grid.robotSees.set(index, newValue);
 
 		// Update the cell and injured discovered status upon discovery
 		if (newValue) {
-			discovered = true;
+			setDiscovered(true);
 			/*
 			 * if (injured != null) { injured.setDiscovered(true); }
 			 */
@@ -376,7 +455,7 @@ public class Cell implements CellInfo {
 	 * @return True if a robot actually sees this cell
 	 */
 	public boolean robotSeesIt() {
-		return robotSees;
+		return grid.robotSees.get(index);
 	}
 
 	/**
@@ -388,13 +467,13 @@ public class Cell implements CellInfo {
 		if (isDiscovered()) {
 			return hasObstacleEx();
 		} else {
-			RescueFramework.log("Access denied: calling hasObstacle for undiscovered cell!");
+			RescueFramework.log(LogLevel.WARNING, "Access denied: calling hasObstacle for undiscovered cell!");
 			return false;
 		}
 	}
 
 	public boolean hasObstacleEx() {
-		return !obstacleImage.isEmpty();
+		return grid.getObstacle(index) != 0;
 	}
 
 	/**
@@ -406,7 +485,7 @@ public class Cell implements CellInfo {
 		if (isDiscovered()) {
 			return hasInjuredEx();
 		} else {
-			RescueFramework.log("Access denied: calling hasInjured for undiscovered cell!");
+			RescueFramework.log(LogLevel.WARNING, "Access denied: calling hasInjured for undiscovered cell!");
 			return false;
 		}
 	}
@@ -421,7 +500,7 @@ public class Cell implements CellInfo {
 	 * @return True if the cell is an exit cell
 	 */
 	public boolean isExit() {
-		return cellType == 1;
+		return grid.getCellType(index) == 1;
 	}
 
 	/**
@@ -430,7 +509,7 @@ public class Cell implements CellInfo {
 	 * @return True if the cell is a start cell
 	 */
 	public boolean isStart() {
-		return cellType == 2;
+		return grid.getCellType(index) == 2;
 	}
 
 	/**
@@ -440,10 +519,11 @@ public class Cell implements CellInfo {
 	 */
 	protected void setExit(boolean value) {
 		if (value) {
-			cellType = 1;
+			grid.setCellType(index, 1);
 		} else {
-			cellType = 0;
+			grid.setCellType(index, 0);
 		}
+		map.layoutChanged();
 	}
 
 	/**
@@ -453,9 +533,9 @@ public class Cell implements CellInfo {
 	 */
 	protected void setStart(boolean value) {
 		if (value) {
-			cellType = 2;
+			grid.setCellType(index, 2);
 		} else {
-			cellType = 0;
+			grid.setCellType(index, 0);
 		}
 	}
 
@@ -512,16 +592,17 @@ public class Cell implements CellInfo {
 		return y;
 	}
 
+	/**
+	 * Returns the index of the cell in the row-major grid of its map
+	 * 
+	 * @return The x*height+y index of the cell
+	 */
+	public int getIndex() {
+		return index;
+	}
+
 	protected String getWallCode() {
-		int code = 0;
-		if (walls[0])
-			code = code + 1;
-		if (walls[1])
-			code = code + 2;
-		if (walls[2])
-			code = code + 4;
-		if (walls[3])
-			code = code + 8;
+		int code = grid.getWalls(index);
 
 		if (code == 0) {
 			return ".";
@@ -557,11 +638,14 @@ public class Cell implements CellInfo {
 	}
 
 	public boolean hasRobot() {
-		return hasRobot;
+		return grid.robot.get(index);
 	}
 
 	protected void setRobotPresence(boolean value) {
-		hasRobot = value;
+		if (grid.robot.get(index) != value) {
+			grid.setFlag(grid.robot, index, value);
+			map.robotPresenceChanged(this);
+		}
 	}
 
 }
@@ -0,0 +1,252 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Compact storage of the cell state of a map. The state is kept in packed
+ * arrays indexed by x*height+y, the Cell objects are views over them.
+ */
+class CellGrid {
+	/** Obstacle image names by id (id 0 is no obstacle) */
+	private static final ArrayList<String> obstacleNames = new ArrayList<>(Arrays.asList(""));
+	/** Obstacle ids by image name */
+	private static final HashMap<String, Short> obstacleIds = new HashMap<>();
+
+	/** Walls of the cells, two cells per byte (low nibble for even indices) */
+	private final byte[] walls;
+	/** Obstacle ids of the cells */
+	private final short[] obstacles;
+	/** Type of the cells (0 = default; 1 = exit; 2 = start) */
+	private final byte[] cellTypes;
+	/** Floor color index of the cells */
+	private final short[] floorColors;
+	/** Direction of the destroyed wall of the cells (4 if none) */
+	private final byte[] destroyedDirections;
+	/** Version stamps of the cells, increased on every change of the copied state */
+	private final int[] versions;
+	/** Version of the source cell at the last copy into this grid (null if never copied) */
+	private int[] syncedSourceVersions = null;
+	/** Version of the cell right after the last copy into this grid */
+	private int[] syncedVersions = null;
+
+	/** Cells discovered by the robots */
+	final BitSet discovered = new BitSet();
+	/** Cells currently seen by a robot */
+	final BitSet robotSees = new BitSet();
+	/** Cells occupied by a robot */
+	final BitSet robot = new BitSet();
+	/** Cells that are doors */
+	final BitSet door = new BitSet();
+	/** Cells with a destroyed wall */
+	final BitSet destroyed = new BitSet();
+	/** Cells not seen since their wall was destroyed */
+	final BitSet unseenSinceDest = new BitSet();
+	/** Cells linked to their neighbours on the map (not a copied state) */
+	final BitSet linked = new BitSet();
+
+	/**
+	 * Create the storage of an empty grid
+	 *
+	 * @param width  Width of the map
+	 * @param height Height of the map
+	 */
+	CellGrid(int width, int height) {
+		int size = width * height;
+		walls = new byte[(size + 1) / 2];
+		obstacles = new short[size];
+		cellTypes = new byte[size];
+		floorColors = new short[size];
+		Arrays.fill(floorColors, (short) -1);
+		destroyedDirections = new byte[size];
+		Arrays.fill(destroyedDirections, (byte) 4);
+		versions = new int[size];
+	}
+
+	/**
+	 * Create a copy of a grid
+	 *
+	 * @param source The grid to copy
+	 */
+	CellGrid(CellGrid source) {
+		walls = source.walls.clone();
+		obstacles = source.obstacles.clone();
+		cellTypes = source.cellTypes.clone();
+		floorColors = source.floorColors.clone();
+		destroyedDirections = source.destroyedDirections.clone();
+		versions = source.versions.clone();
+		if (source.syncedVersions != null) {
+			syncedSourceVersions = source.syncedSourceVersions.clone();
+			syncedVersions = source.syncedVersions.clone();
+		}
+		copyFlags(source);
+	}
+
+	/**
+	 * Overwrite the state of the cells with a copy of the same size
+	 *
+	 * @param source The grid to copy from
+	 */
+	void restore(CellGrid source) {
+		System.arraycopy(source.walls, 0, walls, 0, walls.length);
+		System.arraycopy(source.obstacles, 0, obstacles, 0, obstacles.length);
+		System.arraycopy(source.cellTypes, 0, cellTypes, 0, cellTypes.length);
+		System.arraycopy(source.floorColors, 0, floorColors, 0, floorColors.length);
+		System.arraycopy(source.destroyedDirections, 0, destroyedDirections, 0, destroyedDirections.length);
+		System.arraycopy(source.versions, 0, versions, 0, versions.length);
+		syncedSourceVersions = source.syncedVersions == null ? null : source.syncedSourceVersions.clone();
+		syncedVersions = source.syncedVersions == null ? null : source.syncedVersions.clone();
+		copyFlags(source);
+	}
+
+	/**
+	 * Copy the flags of every cell from another grid
+	 */
+	private void copyFlags(CellGrid source) {
+		BitSet[] from = { source.discovered, source.robotSees, source.robot, source.door, source.destroyed,
+				source.unseenSinceDest, source.linked };
+		BitSet[] to = { discovered, robotSees, robot, door, destroyed, unseenSinceDest, linked };
+		for (int i = 0; i < to.length; i++) {
+			to[i].clear();
+			to[i].or(from[i]);
+		}
+	}
+
+	/**
+	 * Returns the id of an obstacle image, registering it if needed
+	 *
+	 * @param name The obstacle image name
+	 * @return The obstacle id
+	 */
+	static synchronized short obstacleId(String name) {
+		if (name.isEmpty())
+			return 0;
+		Short id = obstacleIds.get(name);
+		if (id == null) {
+			id = (short) obstacleNames.size();
+			obstacleNames.add(name);
+			obstacleIds.put(name, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the obstacle image name of an id
+	 *
+	 * @param id The obstacle id
+	 * @return The obstacle image name
+	 */
+	static synchronized String obstacleName(short id) {
+		return obstacleNames.get(id);
+	}
+
+	int getWalls(int index) {
+		return (walls[index >> 1] >> ((index & 1) << 2)) & 0xF;
+	}
+
+	void setWalls(int index, int code) {
+		int shift = (index & 1) << 2;
+		byte packed = (byte) ((walls[index >> 1] & ~(0xF << shift)) | ((code & 0xF) << shift));
+		if (walls[index >> 1] != packed) {
+			walls[index >> 1] = packed;
+			versions[index]++;
+		}
+	}
+
+	boolean hasWall(int index, int direction) {
+		return (walls[index >> 1] & (1 << (((index & 1) << 2) + direction))) != 0;
+	}
+
+	short getObstacle(int index) {
+		return obstacles[index];
+	}
+
+	void setObstacle(int index, short id) {
+		if (obstacles[index] != id) {
+			obstacles[index] = id;
+			versions[index]++;
+		}
+	}
+
+	int getCellType(int index) {
+		return cellTypes[index];
+	}
+
+	void setCellType(int index, int type) {
+		if (cellTypes[index] != type) {
+			cellTypes[index] = (byte) type;
+			versions[index]++;
+		}
+	}
+
+	int getFloorColor(int index) {
+		return floorColors[index];
+	}
+
+	void setFloorColor(int index, int color) {
+		if (floorColors[index] != color) {
+			floorColors[index] = (short) color;
+			versions[index]++;
+		}
+	}
+
+	int getDestroyedDirection(int index) {
+		return destroyedDirections[index];
+	}
+
+	void setDestroyedDirection(int index, int direction) {
+		if (destroyedDirections[index] != direction) {
+			destroyedDirections[index] = (byte) direction;
+			versions[index]++;
+		}
+	}
+
+	/**
+	 * Change a copied state flag of a cell
+	 *
+	 * @param flags The flags to change (one of the bitsets of the grid)
+	 * @param index Index of the cell
+	 * @param value The new value
+	 */
+	void setFlag(BitSet flags, int index, boolean value) {
+		if (flags.get(index) != value) {
+			flags.set(index, value);
+			versions[index]++;
+		}
+	}
+
+	int getVersion(int index) {
+		return versions[index];
+	}
+
+	/**
+	 * Returns true if neither the cell nor its source changed since the last
+	 * copy into this grid
+	 *
+	 * @param index         Index of the cell
+	 * @param sourceVersion Current version of the source cell
+	 * @return True if copying the cell again would not change anything
+	 */
+	boolean isSynced(int index, int sourceVersion) {
+		return syncedVersions != null && syncedSourceVersions[index] == sourceVersion
+				&& syncedVersions[index] == versions[index];
+	}
+
+	/**
+	 * Remember the versions of a cell after it was copied into this grid
+	 *
+	 * @param index         Index of the cell
+	 * @param sourceVersion Version of the source cell
+	 */
+	void markSynced(int index, int sourceVersion) {
+		if (syncedVersions == null) {
+			syncedSourceVersions = new int[versions.length];
+			Arrays.fill(syncedSourceVersions, -1);
+			syncedVersions = new int[versions.length];
+		}
+		syncedSourceVersions[index] = sourceVersion;
+		syncedVersions[index] = versions[index];
+	}
+}
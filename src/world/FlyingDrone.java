@@ -2,7 +2,6 @@ package world;
 
 import interfaces.RobotPerception;
 import rescueagents.FlyingDroneControl;
-import rescueframework.MainFrame;
 
 public class FlyingDrone extends Robot {
     private final static String imgResource = "drone";
@@ -15,7 +14,7 @@ public class FlyingDrone extends Robot {
         
         type = Type.DRONE;
 		
-        batteryLifeTime = (Injured.MAXHEALTH / 3) + (MainFrame.nextRandInt(200) - 100); //333 + random between [-100, 100[
+        batteryLifeTime = (Injured.MAXHEALTH / 3) + (startCell.map.getContext().getAgentRandom().nextInt(200) - 100); //333 + random between [-100, 100[
 	}
 
 	@Override
@@ -1,5 +1,7 @@
 package world;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import interfaces.InjuredInfo;
 
 /**
@@ -18,7 +20,7 @@ public class Injured implements InjuredInfo{
     /** Cell location of the injured */
     private Cell location = null;
     /** Static ID value of the next injured */
-    private static int nextID = 1;
+    private static AtomicInteger nextID = new AtomicInteger(1);
     /** ID of the injured object */
     public int id;
     
@@ -50,8 +52,7 @@ public class Injured implements InjuredInfo{
         this.health = health;
         
         // Generate unique ID
-        id = nextID;
-        nextID++;
+        id = nextID.getAndIncrement();
     }
     
     /**
@@ -127,6 +128,20 @@ public class Injured implements InjuredInfo{
     }
     
     
+    /**
+     * Overwrite the state changed by the simulation steps
+     * @param health            The health of the injured
+     * @param saved             True if the injured was transported to an exit
+     * @param discovered        True if the injured was discovered
+     * @param location          The cell of the injured or null if carried
+     */
+    void restore(int health, boolean saved, boolean discovered, Cell location) {
+        this.health = health;
+        this.saved = saved;
+        this.discovered = discovered;
+        this.location = location;
+    }
+
     protected void addHealth(int amount) {
         if (health>0) {
             // Only alive patients can be healed
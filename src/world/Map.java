@@ -2,16 +2,20 @@ package world;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import javax.imageio.ImageIO;
@@ -20,8 +24,9 @@ import interfaces.CellInfo;
 import interfaces.InjuredInfo;
 import interfaces.RobotInterface;
 import interfaces.RobotPerception;
-import rescueframework.MainFrame;
+import rescueframework.LogLevel;
 import rescueframework.RescueFramework;
+import rescueframework.SimulationContext;
 import world.Robot.Type;
 import world_debug.ViewLine;
 import world_debug.ViewLineBreakPoint;
@@ -36,9 +41,15 @@ public class Map implements RobotPerception {
 	private final int RESULT_MEDICAL_ROBOT_FACTOR = 400;
 	private final int RESULT_DRONE_FACTOR = 50;
 	private final int RESULT_STATIC_SENSOR_FACTOR = 10;
+	/** Number of paths kept by getShortestPath between two cells */
+	private static final int PATH_CACHE_SIZE = 256;
+	/** Maps with more cells search the exit paths on the room graph, smaller ones on the distance field */
+	private static final int ROOM_GRAPH_MIN_CELLS = 64 * 64;
 
 	/** Cell matrix of the map */
 	public Cell cells[][];
+	/** Packed state of the cells */
+	CellGrid grid;
 	public int maxEnergy;
 	/** Dimensions of the map */
 	private int height = 0, width = 0;
@@ -60,6 +71,36 @@ public class Map implements RobotPerception {
 	private ArrayList<Floor> floorList = new ArrayList<>();
 	/** Number of discovered cells */
 	private int discoveredCellCount = 0;
+	/** Discovered cells next to undiscovered ones, as x*height+y indices */
+	private int[] frontierCells = new int[0];
+	/** Position of the cells in frontierCells or -1 if not on the frontier */
+	private int[] frontierPosition = new int[0];
+	/** Number of cells on the frontier */
+	private int frontierSize = 0;
+	/** Cells in the range of each robot: index shifted left by one, lowest bit set if visible */
+	private HashMap<Robot, int[]> robotRanges = new HashMap<>();
+	/** Number of robots seeing the cells, indexed by x*height+y */
+	private int[] observerCount = new int[0];
+	/** Cells whose walls changed since the visibility was last updated */
+	private ArrayList<Cell> changedWallCells = new ArrayList<>();
+	/** Incremented whenever a wall, obstacle or discovered mark changes */
+	private long topologyVersion = 0;
+	/** Incremented whenever a wall or an exit changes, the rooms depend only on these */
+	private long layoutVersion = 0;
+	/** Distance of the cells from the nearest known exit (-1 if unreachable) */
+	private int[] exitDistance = null;
+	/** Map whose cells the exit distance field was calculated on */
+	private Map exitDistanceMap = null;
+	/** Topology version of exitDistanceMap the field was calculated at */
+	private long exitDistanceVersion = -1;
+	/** Number of known exits the field was calculated with */
+	private int exitDistanceExitCount = -1;
+	/** Rooms of the map, labeled on demand */
+	private RoomSegmentation rooms = null;
+	/** Graph of the rooms and doors, built on demand */
+	private RoomGraph roomGraph = null;
+	/** Paths found by getShortestPath between two cells */
+	private final PathCache pathCache = new PathCache(PATH_CACHE_SIZE);
 	/** Injured people on the map */
 	public ArrayList<Injured> injureds = new ArrayList<>();
 
@@ -67,192 +108,258 @@ public class Map implements RobotPerception {
 	private int medicalRobotCount = 0;
 	private int droneCount = 0;
 	private int staticSensorCount = 0;
+	/** The simulation the map belongs to */
+	private SimulationContext context;
+	/** True if the map file could not be loaded */
+	private boolean loadFailed = false;
 
 	/**
 	 * Default constructor
 	 * 
+	 * @param context
+	 *            The simulation the map belongs to
 	 * @param fileName
 	 *            Text file to load the map from
 	 */
-	public Map(String fileName, int rescueRobotCountIn, int medicalRobotCountIn, int droneAgentCountIn,
+	public Map(SimulationContext context, String fileName, int rescueRobotCountIn, int medicalRobotCountIn, int droneAgentCountIn,
 			int staticSensorCountIn, boolean loadInj) {
-		String line;
-		String[] array;
-		int mode = 0;
-		int row = 0;
-
+		this.context = context;
 		this.fileName = fileName;
 		rescueRobotCount = rescueRobotCountIn;
 		medicalRobotCount = medicalRobotCountIn;
 		droneCount = droneAgentCountIn;
 		staticSensorCount = staticSensorCountIn;
 
-		try(BufferedReader reader = new BufferedReader(new FileReader("maps/" + fileName))) {
-			while ((line = reader.readLine()) != null) {
-				line = line.trim();
-				// Skip comments
-				if (line.startsWith("#") || line.startsWith("//") || line.isEmpty())
-					continue;
-
-				if (mode == 0) {
-					// First line specifies map size
-					array = line.split(" ");
-					width = Integer.valueOf(array[0]);
-					height = Integer.valueOf(array[1]);
-
-					cells = new Cell[width][height];
-
-					mode = 1;
-				} else if (mode == 1) {
-					// Process row definitions
-					array = line.split(" ");
-					if (array.length != width) {
-						throw new Exception("Invalid row specificaion, row width differs: " + width + " =/= "
-								+ array.length + " on line :" + line);
-					} else {
-						for (int i = 0; i < width; i++) {
-							cells[i][row] = new Cell(i, row, array[i]);
-							if (array[i].equals("S"))
-								MainFrame.startCell = cells[i][row];
-							else if (array[i].equals("X"))
-								exitCells.add(cells[i][row]);
-						}
-					}
-
-					row++;
-					if (row >= height)
-						mode = 2;
-
-				} else if (mode == 2) {
-					// Process other objects on the map (obstacles, injured, floor definitions)
-					array = line.split(" ");
-					if (array.length >= 4 && array[0].startsWith("Floor")) {
-						// Floor definition found
-						floorList.add(new Floor(Integer.valueOf(array[1]), Integer.valueOf(array[2]),
-								Integer.valueOf(array[3])));
-					} else if (array.length >= 4 && array[0].startsWith("Obstacle")) {
-						// Obstacle defined
-						crateObstacle(Integer.valueOf(array[1]), Integer.valueOf(array[2]), array[3]);
-					} else if (array.length >= 3 && array[0].startsWith("Injured")) {
-						// Injured defined
-						int injuries;
-						if (array.length >= 4) {
-							// Load health level from file
-							injuries = Integer.valueOf(array[3]);
-						} else {
-							// Generate random health level
-							injuries = (int) ((float) MainFrame.random() * 1000F);
-						}
-
-						// Find affected cell
-						int x = Integer.valueOf(array[1]);
-						int y = Integer.valueOf(array[2]);
-						Cell cell = getCell(x, y);
-
-						// Create new injured and add to cell
-						if (!cell.hasInjuredEx()) {
-							Injured inj = new Injured(injuries);
-							cell.setInjured(inj);
-							inj.setLocation(cell);
-							injureds.add(inj);
-						}
-					} else {
-						RescueFramework.log("Unknown object definition skipped: " + line);
-					}
+		File file = new File("maps", fileName);
+		try {
+			if (BinaryMapFile.isBinary(file)) {
+				load(BinaryMapFile.map(file));
+			} else {
+				try (MapReader reader = new MapReader(file)) {
+					load(reader);
 				}
 			}
 		} catch (Exception e) {
-			RescueFramework.log("Failed to load map from file: " + fileName);
+			RescueFramework.log(LogLevel.ERROR, "Failed to load map from file: " + fileName);
 			e.printStackTrace();
+			loadFailed = true;
 		}
 
 		wallsAndNeighbors();
-
-		// Default floor
-		Floor defaultFloor = new Floor(5, 5, 0);
-		floodFillFloor(defaultFloor);
-
-		// Color floor for rooms
-		for (int i = 0; i < floorList.size(); i++) {
-			floodFillFloor(floorList.get(i));
-		}
+		colorFloors();
 
 		// Update agent visibility and repaint GUI
 		updateAllRobotVisibleCells(true);
 	}
 
 	/**
-	 * Constructor for the unexplored world
+	 * Constructor for the unexplored world: every cell of the loaded map is
+	 * undiscovered and has no walls
 	 * 
-	 * @param fileName
-	 *            Text file to load the map from
+	 * @param context
+	 *            The simulation the map belongs to
+	 * @param world
+	 *            The map loaded from file
 	 */
-	public Map(String fileName, int rescueRobotCountIn, int medicalRobotCountIn, int droneAgentCountIn,
-			int staticSensorCountIn) {
-		String line;
-		String[] array;
-		boolean done = false;
-		this.fileName = fileName;
-		rescueRobotCount = rescueRobotCountIn;
-		medicalRobotCount = medicalRobotCountIn;
-		droneCount = droneAgentCountIn;
-		staticSensorCount = staticSensorCountIn;
+	public Map(SimulationContext context, Map world) {
+		this.context = context;
+		fileName = world.fileName;
+		rescueRobotCount = world.rescueRobotCount;
+		medicalRobotCount = world.medicalRobotCount;
+		droneCount = world.droneCount;
+		staticSensorCount = world.staticSensorCount;
+
+		if (world.cells != null) {
+			width = world.width;
+			height = world.height;
+			cells = new Cell[width][height];
+			grid = new CellGrid(width, height);
+			initFrontier();
+
+			for (int i = 0; i < width; i++) {
+				for (int j = 0; j < height; j++) {
+					cells[i][j] = new Cell(this, i, j, 0);
+				}
+			}
+		}
 
-		try {
-			BufferedReader reader = new BufferedReader(new FileReader("maps/" + fileName));
+		// Default floor, no cell has accessible neighbours yet so it covers a single cell
+		Cell defaultFloorCell = getCell(5, 5);
+		if (defaultFloorCell != null)
+			defaultFloorCell.setFloorColorIndex(0);
+	}
 
-			while (!done && (line = reader.readLine()) != null) {
-				line = line.trim();
-				// Skip comments
-				if (line.startsWith("#") || line.startsWith("//") || line.isEmpty())
-					continue;
+	/**
+	 * Load the cells and objects of the map in a single pass over the file
+	 * 
+	 * @param reader
+	 *            The opened map file
+	 * @throws IOException
+	 *             If the file cannot be read or is invalid
+	 */
+	private void load(MapReader reader) throws IOException {
+		// First line specifies map size
+		if (!reader.nextLine())
+			throw new IOException("Map size is missing");
+		width = reader.nextInt();
+		height = reader.nextInt();
+
+		cells = new Cell[width][height];
+		grid = new CellGrid(width, height);
+		initFrontier();
+
+		// Process row definitions
+		for (int row = 0; row < height; row++) {
+			if (!reader.nextLine())
+				throw new IOException("Invalid map, only " + row + " rows of " + height + " found");
+
+			for (int i = 0; i < width; i++) {
+				if (!reader.hasToken())
+					throw new IOException("Invalid row specificaion, row width differs: " + width + " =/= " + i
+							+ " on line " + reader.getLineNumber());
+
+				int code = reader.nextCellCode();
+				cells[i][row] = new Cell(this, i, row, code);
+				if ((code & MapReader.START) != 0)
+					context.setStartCell(cells[i][row]);
+				else if ((code & MapReader.EXIT) != 0)
+					exitCells.add(cells[i][row]);
+			}
 
-				// First line specifies map size
-				array = line.split(" ");
-				width = Integer.valueOf(array[0]);
-				height = Integer.valueOf(array[1]);
+			if (reader.hasToken())
+				throw new IOException("Invalid row specificaion, row width differs: more than " + width
+						+ " cells on line " + reader.getLineNumber());
+		}
 
-				cells = new Cell[width][height];
+		// Process other objects on the map (obstacles, injured, floor definitions)
+		while (reader.nextLine()) {
+			try {
+				loadObject(reader);
+			} catch (IOException e) {
+				RescueFramework.log(LogLevel.WARNING, "Invalid object definition skipped: " + e.getMessage());
+			}
+		}
+	}
 
-				for (int i = 0; i < width; i++) {
-					for (int j = 0; j < height; j++) {
-						cells[i][j] = new Cell(i, j, ".");
-						cells[i][j].hide();
-					}
+	/**
+	 * Load the cells and objects of the map from the binary format
+	 * 
+	 * @param buffer
+	 *            The mapped file positioned after the header of BinaryMapFile
+	 * @throws IOException
+	 *             If the file is invalid
+	 */
+	private void load(ByteBuffer buffer) throws IOException {
+		width = buffer.getInt();
+		height = buffer.getInt();
+
+		cells = new Cell[width][height];
+		grid = new CellGrid(width, height);
+		initFrontier();
+
+		// Special cells follow the walls in row order
+		int wallsStart = buffer.position();
+		buffer.position(wallsStart + (width * height + 1) / 2);
+		int specialCount = buffer.getInt();
+		int specialIndex = specialCount > 0 ? buffer.getInt() : -1;
+
+		for (int row = 0; row < height; row++) {
+			for (int i = 0; i < width; i++) {
+				int index = i * height + row;
+				int code = (buffer.get(wallsStart + (index >> 1)) >> ((index & 1) << 2)) & 0xF;
+				if (index == specialIndex) {
+					code |= buffer.get();
+					specialIndex = --specialCount > 0 ? buffer.getInt() : -1;
 				}
 
-				done = true;
+				cells[i][row] = new Cell(this, i, row, code);
+				if ((code & MapReader.START) != 0)
+					context.setStartCell(cells[i][row]);
+				else if ((code & MapReader.EXIT) != 0)
+					exitCells.add(cells[i][row]);
 			}
+		}
+		if (specialCount > 0)
+			throw new IOException("Special cells are not in row order");
 
-			reader.close();
-		} catch (Exception e) {
-			RescueFramework.log("Failed to load map from file: " + fileName);
-			e.printStackTrace();
+		int floorCount = buffer.getInt();
+		for (int i = 0; i < floorCount; i++) {
+			floorList.add(new Floor(buffer.getInt(), buffer.getInt(), buffer.getInt()));
 		}
 
-		// Default floor
-		Floor defaultFloor = new Floor(5, 5, 0);
-		floodFillFloor(defaultFloor);
+		String[] images = new String[buffer.getInt()];
+		for (int i = 0; i < images.length; i++) {
+			byte[] name = new byte[buffer.getShort()];
+			buffer.get(name);
+			images[i] = new String(name, StandardCharsets.UTF_8);
+		}
+		int obstacleCount = buffer.getInt();
+		for (int i = 0; i < obstacleCount; i++) {
+			Cell cell = getCell(buffer.getInt());
+			cell.setObstacleImage(images[buffer.getShort()]);
+		}
 
-		// Color floor for rooms
-		for (int i = 0; i < floorList.size(); i++) {
-			floodFillFloor(floorList.get(i));
+		int injuredCount = buffer.getInt();
+		for (int i = 0; i < injuredCount; i++) {
+			Cell cell = getCell(buffer.getInt());
+			Injured inj = new Injured(buffer.getShort());
+			cell.setInjured(inj);
+			inj.setLocation(cell);
+			injureds.add(inj);
 		}
 	}
 
-	public void wallsAndNeighbors() {
-		// Share walls between cells
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
+	/**
+	 * Load an object definition (floor, obstacle or injured) from the current
+	 * line of the map file
+	 * 
+	 * @param reader
+	 *            The map file positioned at the start of the definition
+	 * @throws IOException
+	 *             If the definition is incomplete
+	 */
+	private void loadObject(MapReader reader) throws IOException {
+		String type = reader.nextToken();
+		if (type.startsWith("Floor")) {
+			// Floor definition found
+			floorList.add(new Floor(reader.nextInt(), reader.nextInt(), reader.nextInt()));
+		} else if (type.startsWith("Obstacle")) {
+			// Obstacle defined
+			crateObstacle(reader.nextInt(), reader.nextInt(), reader.nextToken());
+		} else if (type.startsWith("Injured")) {
+			// Find affected cell
+			int x = reader.nextInt();
+			int y = reader.nextInt();
+			Cell cell = getCell(x, y);
+
+			int injuries;
+			if (reader.hasToken()) {
+				// Load health level from file
+				injuries = reader.nextInt();
+			} else {
+				// Generate random health level
+				injuries = (int) ((float) context.getInjuryRandom().nextDouble() * 1000F);
+			}
 
-				cells[x][y].shareWalls(getCell(x, y - 1), getCell(x + 1, y), getCell(x, y + 1), getCell(x - 1, y));
+			// Create new injured and add to cell
+			if (!cell.hasInjuredEx()) {
+				Injured inj = new Injured(injuries);
+				cell.setInjured(inj);
+				inj.setLocation(cell);
+				injureds.add(inj);
 			}
+		} else {
+			RescueFramework.log(LogLevel.WARNING,
+					"Unknown object definition skipped on line " + reader.getLineNumber() + ": " + type);
 		}
+	}
 
-		// Update cell neighbours
+	public void wallsAndNeighbors() {
+		// Share walls between cells
 		for (int x = 0; x < width; x++) {
 			for (int y = 0; y < height; y++) {
-				cells[x][y].updateAccessibleNeighbours();
+
+				cells[x][y].shareWalls(getCell(x, y - 1), getCell(x + 1, y), getCell(x, y + 1), getCell(x - 1, y));
 			}
 		}
 	}
@@ -341,43 +448,89 @@ public class Map implements RobotPerception {
 	}
 
 	/**
-	 * Flood fill block of cells
+	 * Return cell at a given index
 	 * 
-	 * @param floor
-	 *            The floor object to start filling from
+	 * @param index
+	 *            The x*height+y index of the cell
+	 * @return The cell
 	 */
-	private void floodFillFloor(Floor floor) {
-		int index = 0;
-		ArrayList<Cell> cells = new ArrayList<Cell>();
-		cells.add(getCell(floor.getX(), floor.getY()));
-
-		// Loop through all acessible cells from the floor definition
-		while (index < cells.size()) {
-			Cell cell = cells.get(index);
-			if (cell == null || cell.isDoor() || cell.isExit()) {
-				// Stop at doors
-				index++;
-				continue;
-			}
+	Cell getCell(int index) {
+		return cells[index / height][index % height];
+	}
 
-			for (int direction = 0; direction < 4; direction++) {
-				Cell neighbour = cell.getAccessibleNeigbourEx(direction);
-//				Cell neighbour = cell.layoutNeigbours[direction];
-				if (neighbour != null && cells.indexOf(neighbour) == -1) {
-					// Add all accessible neighbour
-					cells.add(neighbour);
-				}
-			}
+	/**
+	 * Returns the rooms of the map, labeling them again if a wall or an exit
+	 * changed since the last call. Only the map loaded from file is
+	 * segmented for planning, its destroyed walls merge the rooms of the
+	 * room graph without labeling them again.
+	 * 
+	 * @return The room segmentation of the current layout
+	 */
+	RoomSegmentation getRooms() {
+		if (rooms == null || rooms.getLayoutVersion() != layoutVersion)
+			rooms = new RoomSegmentation(this);
+		return rooms;
+	}
+
+	/**
+	 * Returns the graph of the rooms and doors, building it again if a wall
+	 * or an exit changed since the last call
+	 * 
+	 * @return The room graph of the current layout
+	 */
+	RoomGraph getRoomGraph() {
+		if (roomGraph == null || roomGraph.getLayoutVersion() != layoutVersion)
+			roomGraph = new RoomGraph(this);
+		return roomGraph;
+	}
 
-			index++;
+	/**
+	 * Color the floor of the rooms. The floors are applied in order (the
+	 * default floor first) and the last floor started in a room colors it.
+	 * Doors and exits get the color of the last floor of the rooms next to
+	 * them, as if the rooms were flood filled one by one.
+	 */
+	private void colorFloors() {
+		RoomSegmentation rooms = getRooms();
+		ArrayList<Floor> floors = new ArrayList<>(floorList.size() + 1);
+		// Default floor
+		floors.add(new Floor(5, 5, 0));
+		floors.addAll(floorList);
+
+		// Last floor started in every room and on the doors and exits
+		int[] roomFloors = new int[rooms.getRoomCount()];
+		Arrays.fill(roomFloors, -1);
+		HashMap<Integer, Integer> portalFloors = new HashMap<>();
+		for (int i = 0; i < floors.size(); i++) {
+			Cell cell = getCell(floors.get(i).getX(), floors.get(i).getY());
+			if (cell == null)
+				continue;
+
+			int room = rooms.getRoom(cell.getIndex());
+			if (room == RoomSegmentation.PORTAL)
+				portalFloors.put(cell.getIndex(), i);
+			else
+				roomFloors[room] = i;
 		}
 
-		// Apply floor coloring to all cells found
-		for (index = 0; index < cells.size(); index++) {
-			Cell cell = cells.get(index);
-			if (cell != null) {
-				cell.setFloorColorIndex(floor.getColorCode());
+		for (int index = 0; index < width * height; index++) {
+			int room = rooms.getRoom(index);
+			int floor;
+			if (room != RoomSegmentation.PORTAL) {
+				floor = roomFloors[room];
+			} else {
+				// Doors and exits are reached from the rooms next to them
+				Cell cell = getCell(index);
+				floor = portalFloors.getOrDefault(index, -1);
+				for (int direction = 0; direction < 4; direction++) {
+					Cell neighbour = cell.getAccessibleNeigbourEx(direction);
+					if (neighbour != null && rooms.getRoom(neighbour.getIndex()) != RoomSegmentation.PORTAL)
+						floor = Math.max(floor, roomFloors[rooms.getRoom(neighbour.getIndex())]);
+				}
 			}
+
+			if (floor >= 0)
+				getCell(index).setFloorColorIndex(floors.get(floor).getColorCode());
 		}
 	}
 
@@ -445,113 +598,208 @@ public class Map implements RobotPerception {
 				cells[x][y].setRobotVisibility(false);
 			}
 		}
+		robotRanges.clear();
+		changedWallCells.clear();
+		if (observerCount.length != width * height)
+			observerCount = new int[width * height];
+		else
+			Arrays.fill(observerCount, 0);
 
 		// Reset viewlines and break points
 		viewLines.clear();
 		viewLineBreakPoints.clear();
 
 		// Update robot visibility one by one
-		for (int index = 0; index < MainFrame.robots.size(); index++) {
-			updateRobotVisibleCells(MainFrame.robots.get(index), copy);
+		for (int index = 0; index < context.getRobots().size(); index++) {
+			updateRobotVisibleCells(context.getRobots().get(index), copy);
 		}
 	}
 
 	/**
-	 * Update the visibility of a single robot
+	 * Update the visibility of a single robot. Only the cells the robot saw
+	 * before and the cells in its current range are touched.
 	 * 
 	 * @param r The robot to update visibility for
 	 */
 	public void updateRobotVisibleCells(Robot r, boolean copy) {
+		if (observerCount.length != width * height)
+			observerCount = new int[width * height];
+
+		// Forget the previous view of the robot
+		int[] previousRange = robotRanges.remove(r);
+		if (previousRange != null) {
+			for (int code : previousRange) {
+				if ((code & 1) != 0 && --observerCount[code >> 1] == 0)
+					getCell(code >> 1).setRobotVisibility(false);
+			}
+		}
+
 		Cell c = r.getLocation();
 		Cell targetCell = null;
 
-		if (c == null)
+		if (c == null || r.visibilityRange < 0)
 			return;
 
+		VisibilityTemplate template = VisibilityTemplate.forRange(r.visibilityRange);
+		int[] range = new int[template.size()];
+		int rangeSize = 0;
+
 		// Loop through all cells around
-		for (int x = c.getX() - r.visibilityRange; x <= c.getX() + r.visibilityRange; x++) {
-			for (int y = c.getY() - r.visibilityRange; y <= c.getY() + r.visibilityRange; y++) {
-				targetCell = getCell(x, y);
-				if (targetCell != null) {
-					// Skip cells to far away
-					if (Math.sqrt((Math.pow(targetCell.getX() - c.getX(), 2))
-							+ Math.pow(targetCell.getY() - c.getY(), 2)) > r.visibilityRange + 0.5)
-						continue;
-
-					// Check visibility
-					boolean visible = checkCellVisibility(c.getX(), c.getY(), targetCell.getX(), targetCell.getY());
-					if (visible) {
-						targetCell.setRobotVisibility(visible);
-					}
-					
-					for (Cell exitCell: MainFrame.map.exitCells) {
-						if(exitCell.equals(targetCell)&&!(MainFrame.discovered.exitCells.contains(targetCell)))
-							MainFrame.discovered.exitCells.add(targetCell);
-					}
+		for (int i = 0; i < template.size(); i++) {
+			int x = c.getX() + template.getOffsetX(i);
+			int y = c.getY() + template.getOffsetY(i);
+			targetCell = getCell(x, y);
+			if (targetCell != null) {
+				// Check visibility
+				boolean visible = template.isVisible(this, c.getX(), c.getY(), i);
+				int index = x * height + y;
+				range[rangeSize++] = (index << 1) | (visible ? 1 : 0);
+				if (visible) {
+					observerCount[index]++;
+					targetCell.setRobotVisibility(visible);
+				}
 
-					// viewLines.add(new ViewLine(c.getX()+0.5, c.getY()+0.5,targetCell.getX()+0.5,
-					// targetCell.getY()+0.5, visible));
-
-					// if (visible)
-					// targetCell.copy(MainFrame.discovered.cells[x][y]);
-					if (copy) {
-						targetCell.copy(MainFrame.discovered.getCell(x, y));
-						MainFrame.discovered.cells[x][y].shareWalls(MainFrame.discovered.getCell(x, y - 1), MainFrame.discovered.getCell(x + 1, y),
-								MainFrame.discovered.getCell(x, y + 1), MainFrame.discovered.getCell(x - 1, y));
-						MainFrame.discovered.cells[x][y].updateAccessibleNeighbours();
-
-						if (visible && targetCell.hasInjured()) {
-							if (!targetCell.getInjured().isDiscovered()) {
-								targetCell.injured.setDiscovered(true);
-								findInjured(targetCell);
-							} else {
-								updateInjured(targetCell);
-							}
-						}
+				if (targetCell.isExit())
+					registerDiscoveredExit(targetCell);
 
-						if (targetCell.destroyed && visible && targetCell.destr_dir < 4) {
-							MainFrame.discovered.cells[x][y].walls[targetCell.destr_dir] = false;
-							Cell neighbour = MainFrame.discovered.cells[x][y].layoutNeigbours[targetCell.destr_dir];
-							if (neighbour != null) {
-								neighbour.setWall((targetCell.destr_dir + 2) % 4, false);
-								neighbour.destroyed = true;
-								getCell(x, y).seenSinceDest = true;
-//								MainFrame.discovered.cells[x][y].seenSinceDest = true;
-								MainFrame.discovered.cells[x][y].layoutNeigbours[targetCell.destr_dir]=neighbour;
-								MainFrame.discovered.cells[x][y].updateAccessibleNeighbours();
-								MainFrame.discovered.cells[x][y].layoutNeigbours[targetCell.destr_dir].updateAccessibleNeighbours();
-								if (!targetCell.getObstacleImage().equals(""))
-									MainFrame.discovered.cells[x][y].setObstacleImage("junk10");
-							}
-						}
-					}
+				if (copy)
+					copyToDiscovered(targetCell, visible);
+			}
+		}
+
+		robotRanges.put(r, Arrays.copyOf(range, rangeSize));
+	}
+
+	/**
+	 * Copy the current state of the cells in the range of every robot to the
+	 * discovered map without recalculating the lines of sight
+	 */
+	public void copyObservedCells() {
+		for (Robot r : context.getRobots()) {
+			int[] range = robotRanges.get(r);
+			if (range == null)
+				continue;
+			for (int code : range) {
+				copyToDiscovered(getCell(code >> 1), (code & 1) != 0);
+			}
+		}
+	}
+
+	/**
+	 * Recalculate the visibility of the robots whose view may have been changed
+	 * by a wall change since the last call
+	 * 
+	 * @param copy True to copy the visible cells to the discovered map
+	 */
+	public void updateChangedRobotVisibleCells(boolean copy) {
+		if (changedWallCells.isEmpty())
+			return;
+
+		ArrayList<Cell> changed = new ArrayList<>(changedWallCells);
+		changedWallCells.clear();
+		for (Robot r : context.getRobots()) {
+			Cell c = r.getLocation();
+			if (c == null || !robotRanges.containsKey(r))
+				continue;
+			for (Cell cell : changed) {
+				if (Math.abs(cell.getX() - c.getX()) <= r.visibilityRange + 1
+						&& Math.abs(cell.getY() - c.getY()) <= r.visibilityRange + 1) {
+					updateRobotVisibleCells(r, copy);
+					break;
 				}
 			}
 		}
 	}
 
+	/**
+	 * Register a wall change that may affect the view of the robots
+	 * 
+	 * @param cell The cell whose wall changed
+	 */
+	void wallChanged(Cell cell) {
+		if (!robotRanges.isEmpty())
+			changedWallCells.add(cell);
+	}
+
+	/**
+	 * Add the exit cell to the known exits of the discovered map
+	 * 
+	 * @param targetCell The exit cell in the range of a robot
+	 */
+	private void registerDiscoveredExit(Cell targetCell) {
+		for (Cell exitCell: context.getMap().exitCells) {
+			if(exitCell.equals(targetCell)&&!(context.getDiscovered().exitCells.contains(targetCell)))
+				context.getDiscovered().exitCells.add(targetCell);
+		}
+	}
+
+	/**
+	 * Copy a cell in the range of a robot to the discovered map
+	 * 
+	 * @param targetCell The cell on this map
+	 * @param visible    True if the robot sees the cell
+	 */
+	private void copyToDiscovered(Cell targetCell, boolean visible) {
+		int x = targetCell.getX();
+		int y = targetCell.getY();
+
+		// Cells unchanged on both maps since the last copy need no update
+		Map discovered = context.getDiscovered();
+		int index = targetCell.getIndex();
+		int version = grid.getVersion(index);
+		if (!discovered.grid.isSynced(index, version)) {
+			Cell discoveredCell = discovered.cells[x][y];
+			targetCell.copy(discoveredCell);
+			discoveredCell.shareWalls(discovered.getCell(x, y - 1), discovered.getCell(x + 1, y),
+					discovered.getCell(x, y + 1), discovered.getCell(x - 1, y));
+			discovered.grid.markSynced(index, version);
+		}
+
+		if (visible && targetCell.hasInjured()) {
+			if (!targetCell.getInjured().isDiscovered()) {
+				targetCell.injured.setDiscovered(true);
+				findInjured(targetCell);
+			} else {
+				updateInjured(targetCell);
+			}
+		}
+
+		if (targetCell.isDestroyed() && visible && targetCell.getDestroyedDirection() < 4) {
+			context.getDiscovered().cells[x][y].setWall(targetCell.getDestroyedDirection(), false);
+			Cell neighbour = context.getDiscovered().cells[x][y].getLayoutNeighbour(targetCell.getDestroyedDirection());
+			if (neighbour != null) {
+				neighbour.setWall((targetCell.getDestroyedDirection() + 2) % 4, false);
+				neighbour.setDestroyed();
+				getCell(x, y).markSeenSinceDest();
+//				context.getDiscovered().cells[x][y].seenSinceDest = true;
+				if (!targetCell.getObstacleImage().equals(""))
+					context.getDiscovered().cells[x][y].setObstacleImage("junk10");
+			}
+		}
+	}
+
 	public void findInjured(Cell pos) {
 		Injured inj = new Injured(pos.getInjured().getHealth());
 		inj.setDiscovered(true);
 		inj.id = pos.getInjured().id;
 
-		inj.setLocation(MainFrame.discovered.getCell(pos.getX(), pos.getY()));
-		MainFrame.discovered.injureds.add(inj);
-		MainFrame.discovered.getCell(pos.getX(), pos.getY()).setInjured(inj);
+		inj.setLocation(context.getDiscovered().getCell(pos.getX(), pos.getY()));
+		context.getDiscovered().injureds.add(inj);
+		context.getDiscovered().getCell(pos.getX(), pos.getY()).setInjured(inj);
 	}
 
 	public void updateInjured(Cell cell) {
 		Injured inj = cell.getInjured();
 		inj.id = cell.getInjured().id;
 		int index = -1;
-		for (Injured iter : MainFrame.discovered.injureds) {
+		for (Injured iter : context.getDiscovered().injureds) {
 			if (iter.getLocation().equals(inj.getLocation())) {
-				index = MainFrame.discovered.injureds.lastIndexOf(iter);
+				index = context.getDiscovered().injureds.lastIndexOf(iter);
 			}
 		}
 		if (index > -1) {
-			MainFrame.discovered.removeInjured(MainFrame.discovered.injureds.get(index));
-			MainFrame.discovered.injureds.remove(index);
+			context.getDiscovered().removeInjured(context.getDiscovered().injureds.get(index));
+			context.getDiscovered().injureds.remove(index);
 			findInjured(this.getCell(inj.getLocation().getX(), inj.getLocation().getY()));
 		}
 	}
@@ -810,7 +1058,7 @@ public class Map implements RobotPerception {
 
 	public List<InjuredInfo> getDiscoveredInjureds() {
 		ArrayList<InjuredInfo> result = new ArrayList<InjuredInfo>();
-		for (Injured i : MainFrame.discovered.injureds) {
+		for (Injured i : context.getDiscovered().injureds) {
 			result.add(i);
 		}
 		return result;
@@ -818,13 +1066,101 @@ public class Map implements RobotPerception {
 
 	public List<InjuredInfo> getDiscoveredInjureds(int maxHealth, int minHealth) {
 		ArrayList<InjuredInfo> result = new ArrayList<InjuredInfo>();
-		for (Injured i : MainFrame.discovered.injureds) {
+		for (Injured i : context.getDiscovered().injureds) {
 			if (i.getHealth() <= maxHealth && i.getHealth() >= minHealth && !i.isSaved())
 				result.add(i);
 		}
 		return result;
 	}
 
+	/**
+	 * Allocate the empty frontier for the current map size
+	 */
+	private void initFrontier() {
+		frontierCells = new int[width * height];
+		frontierPosition = new int[width * height];
+		Arrays.fill(frontierPosition, -1);
+		frontierSize = 0;
+	}
+
+	/**
+	 * Update the frontier around a cell whose discovered mark has changed
+	 * 
+	 * @param cell
+	 *            The changed cell
+	 */
+	void updateFrontier(Cell cell) {
+		int x = cell.getX();
+		int y = cell.getY();
+		refreshFrontier(x, y);
+		refreshFrontier(x, y - 1);
+		refreshFrontier(x + 1, y);
+		refreshFrontier(x, y + 1);
+		refreshFrontier(x - 1, y);
+	}
+
+	/**
+	 * Recalculate the frontier membership of a single cell
+	 * 
+	 * @param x
+	 *            X coordinate
+	 * @param y
+	 *            Y coordinate
+	 */
+	private void refreshFrontier(int x, int y) {
+		Cell cell = getCell(x, y);
+		if (cell == null)
+			return;
+
+		boolean onFrontier = false;
+		if (cell.isDiscovered()) {
+			onFrontier = isUndiscovered(x, y - 1) || isUndiscovered(x + 1, y) || isUndiscovered(x, y + 1)
+					|| isUndiscovered(x - 1, y);
+		}
+
+		int index = x * height + y;
+		int position = frontierPosition[index];
+		if (onFrontier && position == -1) {
+			// Append to the end
+			frontierPosition[index] = frontierSize;
+			frontierCells[frontierSize++] = index;
+		} else if (!onFrontier && position != -1) {
+			// Move the last element into the gap
+			int last = frontierCells[--frontierSize];
+			frontierCells[position] = last;
+			frontierPosition[last] = position;
+			frontierPosition[index] = -1;
+		}
+	}
+
+	/**
+	 * Returns true if the cell exists and is not discovered yet
+	 */
+	private boolean isUndiscovered(int x, int y) {
+		Cell cell = getCell(x, y);
+		return cell != null && !cell.isDiscovered();
+	}
+
+	/**
+	 * Returns the number of discovered cells next to undiscovered ones
+	 * 
+	 * @return The size of the exploration frontier
+	 */
+	public int getFrontierSize() {
+		return frontierSize;
+	}
+
+	/**
+	 * Returns a cell of the exploration frontier
+	 * 
+	 * @param i
+	 *            Position on the frontier (0 to getFrontierSize()-1)
+	 * @return The discovered frontier cell
+	 */
+	public Cell getFrontierCell(int i) {
+		return getCell(frontierCells[i]);
+	}
+
 	public ArrayList<Cell> getUnknownCells() {
 		ArrayList<Cell> result = new ArrayList<Cell>();
 
@@ -839,56 +1175,308 @@ public class Map implements RobotPerception {
 		return result;
 	}
 
+	/**
+	 * Find the shortest path to the nearest target cell. Obstacles and other
+	 * robots are not passed, drones follow the same rules.
+	 * 
+	 * @param start
+	 *            The start cell to search from
+	 * @param targetCells
+	 *            The target cells
+	 * @param isPathForDrone
+	 *            Ignored, drones are searched for like robots
+	 * @return The shortest path to the nearest reachable target or null
+	 */
 	public Path getShortestPath(CellInfo start, List<Cell> targetCells, boolean isPathForDrone) {
 		if (targetCells.size() == 0) {
 			return null;
 		}
 
-		Cell startCell = (Cell) start;
+		return AStarSearch.getPlanner().searchNearest((Cell) start, targetCells);
+	}
+
+	/**
+	 * Find the shortest path between two cells. The path of an earlier call
+	 * between the same cells is returned again while the topology of the map
+	 * is the same and no robot stands on the path. Paths leading around
+	 * robots are not kept.
+	 * 
+	 * @param start
+	 *            The start cell to search from
+	 * @param target
+	 *            The target cell to search to
+	 * @param isPathForDrone
+	 *            True to ignore obstacles and other robots
+	 * @return The shortest path or null if the target is not reachable
+	 */
+	@Override
+	public Path getShortestPath(CellInfo start, CellInfo target, boolean isPathForDrone) {
+		Path path = pathCache.get((Cell) start, (Cell) target, isPathForDrone);
+		if (path != null)
+			return path;
+
+		PathPlanner planner = AStarSearch.getPlanner();
+		if (isPathForDrone)
+			path = planner.searchPathForDrone((Cell) start, (Cell) target, -1, Color.MAGENTA);
+		else
+			path = planner.search((Cell) start, (Cell) target, -1);
+		// Paths around robots are not kept, the robots move on
+		if (path != null && !planner.isRobotInTheWay())
+			pathCache.put((Cell) start, (Cell) target, isPathForDrone, path);
+		return path;
+	}
 
-		Collections.sort(targetCells, new Comparator<Cell>() {
-			@Override
-			public int compare(Cell cell1, Cell cell2) {
-				if (cell1.rawDistanceFrom(startCell) < cell2.rawDistanceFrom(startCell)) {
-					return -1;
-				} else if (cell1.rawDistanceFrom(startCell) > cell2.rawDistanceFrom(startCell)) {
-					return 1;
-				} else {
-					return 0;
-				}
-			}
-		});
-
-		int bestLength = -1;
-		Path bestPath = AStarSearch.search(startCell, targetCells.get(0), -1);
-		if (bestPath != null)
-			bestLength = bestPath.getLength();
-
-		for (int i = 1; i < targetCells.size(); i++) {
-			Cell target = targetCells.get(i);
-			int manhattanDistance = startCell.rawDistanceFrom(target);
-			if (bestLength > -1) {
-				if (manhattanDistance > bestLength)
-					break;
+	@Override
+	public Path getShortestExitPath(CellInfo start) {
+		if (exitCells.isEmpty())
+			return null;
+
+		// Search the room graph of the static layout and refine the route in the rooms passed
+		PathPlanner planner = AStarSearch.getPlanner();
+		Map graph = context.getMap();
+		if (((Cell) start).map == graph && graph.getWidth() * graph.getHeight() > ROOM_GRAPH_MIN_CELLS) {
+			RoomGraph.Route route = graph.getRoomGraph().searchNearest((Cell) start, exitCells);
+			if (route == null)
+				return null;
+			Path path = route.refine(planner);
+			if (path != null)
+				return path;
+		}
+
+		// Small map, start on the discovered map or a route that can not be followed: search the whole grid
+		return planner.searchDistanceField((Cell) start, getExitDistanceField());
+	}
+
+	/**
+	 * Returns the distance field of the known exits. The field is recalculated
+	 * only if the topology changed or new exits were found since the last call.
+	 * Robots are not taken into account.
+	 * 
+	 * @return Distance of the cells from the nearest exit indexed by x*height+y
+	 */
+	public int[] getExitDistanceField() {
+		// The exit cells may belong to an other map, the field is built on their cells
+		Map graph = exitCells.get(0).map;
+		if (exitDistance != null && exitDistanceMap == graph && exitDistanceVersion == graph.topologyVersion
+				&& exitDistanceExitCount == exitCells.size())
+			return exitDistance;
+
+		int gridHeight = graph.getHeight();
+		int gridSize = graph.getWidth() * gridHeight;
+		if (exitDistance == null || exitDistance.length != gridSize)
+			exitDistance = new int[gridSize];
+		Arrays.fill(exitDistance, -1);
+
+		// Multi-source breadth-first search from all known exits
+		int[] queue = new int[gridSize];
+		int head = 0, tail = 0;
+		for (Cell exitCell : exitCells) {
+			int index = exitCell.getIndex();
+			if (exitDistance[index] == -1) {
+				exitDistance[index] = 0;
+				queue[tail++] = index;
 			}
+		}
+
+		while (head < tail) {
+			int index = queue[head++];
+			Cell cell = graph.cells[index / gridHeight][index % gridHeight];
+			// Paths may only lead through free cells (or end on an exit)
+			if (exitDistance[index] > 0
+					&& (!cell.isDiscovered() || !cell.isSeenSinceDest() || cell.hasObstacleEx()))
+				continue;
 
-			Path thisPath = AStarSearch.search(startCell, target, bestLength);
-			if (thisPath != null && (bestPath == null || thisPath.getLength() < bestPath.getLength())) {
-				bestPath = thisPath;
-				bestLength = bestPath.getLength();
+			for (int dir = 0; dir < 4; dir++) {
+				Cell neighbour = cell.getAccessibleNeigbourEx(dir);
+				if (neighbour == null)
+					continue;
+				int neighbourIndex = neighbour.getIndex();
+				if (exitDistance[neighbourIndex] == -1) {
+					exitDistance[neighbourIndex] = exitDistance[index] + 1;
+					queue[tail++] = neighbourIndex;
+				}
 			}
 		}
-		return bestPath;
+
+		exitDistanceMap = graph;
+		exitDistanceVersion = graph.topologyVersion;
+		exitDistanceExitCount = exitCells.size();
+		return exitDistance;
+	}
+
+	/**
+	 * Register a change of walls, obstacles or discovered cells
+	 * 
+	 * @param cell
+	 *            The changed cell
+	 */
+	void topologyChanged(Cell cell) {
+		topologyVersion++;
+		if (roomGraph != null)
+			roomGraph.cellChanged(cell.getIndex());
+	}
+
+	/**
+	 * Register a robot arriving on or leaving a cell
+	 * 
+	 * @param cell
+	 *            The changed cell
+	 */
+	void robotPresenceChanged(Cell cell) {
+		if (roomGraph != null)
+			roomGraph.cellChanged(cell.getIndex());
+	}
+
+	/**
+	 * Register a destroyed wall. The room graph merges the rooms on the two
+	 * sides if it is up to date, the layout changes otherwise.
+	 * 
+	 * @param cell
+	 *            The cell whose wall was destroyed
+	 * @param direction
+	 *            The direction of the wall
+	 */
+	void wallRemoved(Cell cell, int direction) {
+		Cell neighbour = cell.getLayoutNeighbour(direction);
+		if (roomGraph != null && roomGraph.getLayoutVersion() == layoutVersion && neighbour != null)
+			roomGraph.wallRemoved(cell.getIndex(), neighbour.getIndex());
+		else
+			layoutChanged();
+	}
+
+	/**
+	 * Register a change of walls or exits
+	 */
+	void layoutChanged() {
+		layoutVersion++;
+	}
+
+	/**
+	 * Returns the layout version of the map
+	 * 
+	 * @return A counter incremented on every wall or exit change
+	 */
+	long getLayoutVersion() {
+		return layoutVersion;
 	}
 
+	/**
+	 * Returns the topology version of the map
+	 * 
+	 * @return A counter incremented on every wall, obstacle or discovery change
+	 */
 	@Override
-	public Path getShortestExitPath(CellInfo start) {
-		return getShortestPath(start, exitCells, false);
+	public long getTopologyVersion() {
+		return topologyVersion;
+	}
+
+	/**
+	 * Copy the state of the map changed by the simulation steps
+	 * 
+	 * @param injuredIndices
+	 *            Index of every injured referenced by the map
+	 * @return The copied state
+	 */
+	WorldSnapshot.MapState saveState(IdentityHashMap<Injured, Integer> injuredIndices) {
+		WorldSnapshot.MapState state = new WorldSnapshot.MapState();
+		state.grid = new CellGrid(grid);
+
+		int[] injuredCells = new int[2 * width * height];
+		int injuredCellCount = 0;
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (cells[x][y].injured != null) {
+					injuredCells[injuredCellCount++] = cells[x][y].getIndex();
+					injuredCells[injuredCellCount++] = injuredIndices.get(cells[x][y].injured);
+				}
+			}
+		}
+		state.injuredCells = Arrays.copyOf(injuredCells, injuredCellCount);
+
+		state.injureds = new int[injureds.size()];
+		for (int i = 0; i < injureds.size(); i++)
+			state.injureds[i] = injuredIndices.get(injureds.get(i));
+		state.exitCells = new int[exitCells.size()];
+		for (int i = 0; i < exitCells.size(); i++)
+			state.exitCells[i] = WorldSnapshot.cellCode(exitCells.get(i));
+		state.frontier = Arrays.copyOf(frontierCells, frontierSize);
+
+		// The ranges are replaced on every update, never changed in place
+		state.robotRanges = new int[context.getRobots().size()][];
+		for (int i = 0; i < state.robotRanges.length; i++)
+			state.robotRanges[i] = robotRanges.get(context.getRobots().get(i));
+		state.changedWallCells = new int[changedWallCells.size()];
+		for (int i = 0; i < changedWallCells.size(); i++)
+			state.changedWallCells[i] = WorldSnapshot.cellCode(changedWallCells.get(i));
+		state.discoveredCellCount = discoveredCellCount;
+		return state;
+	}
+
+	/**
+	 * Overwrite the state of the map with a copy of the same map
+	 * 
+	 * @param state
+	 *            The state returned by saveState
+	 * @param injureds
+	 *            The injureds by their index in the copy
+	 */
+	void restoreState(WorldSnapshot.MapState state, Injured[] injureds) {
+		grid.restore(state.grid);
+
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				cells[x][y].injured = null;
+			}
+		}
+		for (int i = 0; i < state.injuredCells.length; i += 2)
+			getCell(state.injuredCells[i]).injured = injureds[state.injuredCells[i + 1]];
+
+		this.injureds.clear();
+		for (int index : state.injureds)
+			this.injureds.add(injureds[index]);
+		exitCells.clear();
+		for (int code : state.exitCells)
+			exitCells.add(WorldSnapshot.cell(context, code));
+
+		Arrays.fill(frontierPosition, -1);
+		frontierSize = state.frontier.length;
+		for (int i = 0; i < frontierSize; i++) {
+			frontierCells[i] = state.frontier[i];
+			frontierPosition[state.frontier[i]] = i;
+		}
+
+		robotRanges.clear();
+		if (observerCount.length != width * height)
+			observerCount = new int[width * height];
+		else
+			Arrays.fill(observerCount, 0);
+		for (int i = 0; i < state.robotRanges.length; i++) {
+			if (state.robotRanges[i] == null)
+				continue;
+			robotRanges.put(context.getRobots().get(i), state.robotRanges[i]);
+			for (int code : state.robotRanges[i]) {
+				if ((code & 1) != 0)
+					observerCount[code >> 1]++;
+			}
+		}
+		changedWallCells.clear();
+		for (int code : state.changedWallCells)
+			changedWallCells.add(WorldSnapshot.cell(context, code));
+		discoveredCellCount = state.discoveredCellCount;
+
+		displayPaths.clear();
+		viewLines.clear();
+		viewLineBreakPoints.clear();
+
+		// Every cell may have changed, drop the cached rooms and paths
+		layoutVersion++;
+		topologyVersion++;
+		roomGraph = null;
 	}
 
 	@Override
 	public Path getShortestUnknownPath(CellInfo start) {
-		return getShortestPath(start, getUnknownCells(), false);
+		return AStarSearch.getPlanner().searchNearestUnknown((Cell) start, this);
 	}
 
 	@Override
@@ -915,7 +1503,7 @@ public class Map implements RobotPerception {
 	}
 
 	public List<Robot> getRobots() {
-		return MainFrame.robots;
+		return context.getRobots();
 	}
 
 	public List<RobotInterface> getRobotsList() {
@@ -923,7 +1511,16 @@ public class Map implements RobotPerception {
 	}
 
 	public ArrayList<Injured> getSavedInjureds() {
-		return MainFrame.savedInjureds;
+		return context.getSavedInjureds();
+	}
+
+	/**
+	 * Returns the simulation the map belongs to
+	 * 
+	 * @return The simulation context of the map
+	 */
+	public SimulationContext getContext() {
+		return context;
 	}
 
 	public ArrayList<Path> getDisplayPaths() {
@@ -941,16 +1538,35 @@ public class Map implements RobotPerception {
 			injured.getLocation().setInjured(null);
 	}
 
+	/**
+	 * Save the map to the file it was loaded from
+	 */
 	protected void saveToFile() {
-		try {
-			BufferedWriter writer = new BufferedWriter(new FileWriter("maps/" + fileName));
+		saveToFile(fileName);
+	}
+
+	/**
+	 * Save the map to the maps folder, in the binary format if the file name
+	 * has the binary extension and in the text format otherwise
+	 * 
+	 * @param fileName
+	 *            Name of the map file
+	 */
+	protected void saveToFile(String fileName) {
+		if (fileName.endsWith(BinaryMapFile.EXTENSION)) {
+			saveToBinaryFile(fileName);
+			return;
+		}
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter("maps/" + fileName))) {
 			writer.write("// Map size\n");
 			writer.write(width + " " + height + "\n");
 
-			String obstacles = "";
+			StringBuilder obstacles = new StringBuilder();
+			StringBuilder line = new StringBuilder();
 			writer.write("\n// Cell borders\n");
 			for (int y = 0; y < height; y++) {
-				String line = "";
+				line.setLength(0);
 				for (int x = 0; x < width; x++) {
 					String wallCode = "";
 
@@ -964,13 +1580,13 @@ public class Map implements RobotPerception {
 						wallCode = cells[x][y].getWallCode();
 					}
 
-					line = line + wallCode + " ";
+					line.append(wallCode).append(' ');
 
 					if (cells[x][y].hasObstacleEx()) {
-						obstacles = obstacles + "Obstacle " + x + " " + y + " " + cells[x][y].getObstacleImage() + "\n";
+						obstacles.append("Obstacle " + x + " " + y + " " + cells[x][y].getObstacleImage() + "\n");
 					}
 				}
-				writer.write(line + "\n");
+				writer.write(line.append('\n').toString());
 			}
 
 			writer.write("\n// Floors\n");
@@ -980,16 +1596,107 @@ public class Map implements RobotPerception {
 			}
 
 			writer.write("\n// Obstacles\n");
-			writer.write(obstacles);
+			writer.write(obstacles.toString());
 
 			writer.write("\n// Injureds\n");
 			for (int i = 0; i < injureds.size(); i++) {
 				Injured injured = injureds.get(i);
+				if (injured.getLocation() == null)
+					continue;
 				writer.write("Injured " + injured.getLocation().getX() + " " + injured.getLocation().getY() + " "
 						+ injured.getHealth() + "\n");
 			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Save the map to the maps folder in the format of BinaryMapFile
+	 * 
+	 * @param fileName
+	 *            Name of the map file
+	 */
+	private void saveToBinaryFile(String fileName) {
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream("maps/" + fileName)))) {
+			output.writeInt(BinaryMapFile.MAGIC);
+			output.writeInt(BinaryMapFile.VERSION);
+			output.writeInt(width);
+			output.writeInt(height);
+
+			// Walls, two cells per byte
+			int size = width * height;
+			for (int index = 0; index < size; index += 2) {
+				int walls = grid.getWalls(index);
+				if (index + 1 < size)
+					walls |= grid.getWalls(index + 1) << 4;
+				output.writeByte(walls);
+			}
 
-			writer.close();
+			// Special cells in row order
+			int specialCount = 0;
+			for (int index = 0; index < size; index++) {
+				if (getCell(index).isExit() || getCell(index).isStart() || getCell(index).isDoor())
+					specialCount++;
+			}
+			output.writeInt(specialCount);
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					Cell cell = cells[x][y];
+					if (cell.isExit() || cell.isStart() || cell.isDoor()) {
+						output.writeInt(cell.getIndex());
+						output.writeByte(
+								cell.isExit() ? MapReader.EXIT : cell.isStart() ? MapReader.START : MapReader.DOOR);
+					}
+				}
+			}
+
+			output.writeInt(floorList.size());
+			for (Floor floor : floorList) {
+				output.writeInt(floor.getX());
+				output.writeInt(floor.getY());
+				output.writeInt(floor.getColorCode());
+			}
+
+			// Obstacle images are numbered in the order of first use
+			HashMap<String, Integer> images = new HashMap<>();
+			ArrayList<Cell> obstacleCells = new ArrayList<>();
+			for (int index = 0; index < size; index++) {
+				Cell cell = getCell(index);
+				if (cell.hasObstacleEx()) {
+					obstacleCells.add(cell);
+					images.putIfAbsent(cell.getObstacleImage(), images.size());
+				}
+			}
+			String[] imageNames = new String[images.size()];
+			for (java.util.Map.Entry<String, Integer> image : images.entrySet()) {
+				imageNames[image.getValue()] = image.getKey();
+			}
+			output.writeInt(imageNames.length);
+			for (String image : imageNames) {
+				byte[] name = image.getBytes(StandardCharsets.UTF_8);
+				output.writeShort(name.length);
+				output.write(name);
+			}
+			output.writeInt(obstacleCells.size());
+			for (Cell cell : obstacleCells) {
+				output.writeInt(cell.getIndex());
+				output.writeShort(images.get(cell.getObstacleImage()));
+			}
+
+			int injuredCount = 0;
+			for (Injured injured : injureds) {
+				if (injured.getLocation() != null)
+					injuredCount++;
+			}
+			output.writeInt(injuredCount);
+			for (Injured injured : injureds) {
+				if (injured.getLocation() != null) {
+					output.writeInt(injured.getLocation().getIndex());
+					output.writeShort(injured.getHealth());
+				}
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -1017,7 +1724,7 @@ public class Map implements RobotPerception {
 	public int getRobotsEnergyLevel() {
 		int retval = 0;
 
-		for (Robot robot: MainFrame.robots) {
+		for (Robot robot: context.getRobots()) {
 			retval += robot.getBatteryLifeTime();
 		}
 
@@ -1031,61 +1738,32 @@ public class Map implements RobotPerception {
 			return medicalRobotCount;
 	}
 
-	public String getTotalScore() {
-		int aliveOutside = 0;
-		int deadOutside = 0;
-		int injuredInside = 0;
-		int totalInjured = injureds.size();
-
-		ArrayList<Injured> inTransitInjureds = new ArrayList<>();
-		for (int i = 0; i < MainFrame.robots.size(); i++) {
-			if (MainFrame.robots.get(i).hasInjured()) {
-				inTransitInjureds.add(MainFrame.robots.get(i).getInjured());
-			}
-		}
-
-		for (int i = 0; i < totalInjured; i++) {
-			Injured injured = injureds.get(i);
-			if (injured.getLocation() == null && inTransitInjureds.indexOf(injured) == -1) {
-				// Already outside
-				if (injured.isAlive()) {
-					aliveOutside++;
-				} else {
-					deadOutside++;
-				}
-			} else
-				injuredInside++;
-		}
-
+	/**
+	 * Returns the current state of the score. The saved injureds and the used
+	 * energy are counted by the simulation as they change.
+	 * 
+	 * @return The score snapshot
+	 */
+	public ScoreSnapshot getScore() {
+		int aliveOutside = context.getSavedAliveCount();
+		int deadOutside = context.getSavedDeadCount();
 		int rescueScore = (aliveOutside * RESULT_SAVED_INJURED_FACTOR + deadOutside * RESULT_DEAD_OUTSIDE_FACTOR);
 
-		String s = "Time: " + MainFrame.getTime() + " | ";
-
-		s +=  totalInjured + " injured (inside: " + injuredInside + ", outside: " + aliveOutside
-				+ " alive, " + deadOutside + " dead)  = " + rescueScore;
-
 		int infrastructureCost = (rescueRobotCount * RESULT_RESCUE_ROBOT_FACTOR
 				+ medicalRobotCount * RESULT_MEDICAL_ROBOT_FACTOR + droneCount * RESULT_DRONE_FACTOR
 				+ staticSensorCount * RESULT_STATIC_SENSOR_FACTOR);
 
-		s +=  "  |  robot cost: " + infrastructureCost;
-
-		int consumedEnergy = maxEnergy - getRobotsEnergyLevel();
-
-		s +=  "  |  Energy: " + consumedEnergy + " used";
-
-		int finalScore = rescueScore - infrastructureCost - consumedEnergy - MainFrame.getTime();
-
-		s +=  "  |  Score: " + finalScore + "";
-
-		s +=  "  |  Simulation " + MainFrame.status;
+		return new ScoreSnapshot(context.getTime(), injureds.size(), aliveOutside, deadOutside, rescueScore,
+				infrastructureCost, context.getConsumedEnergy(), context.getStatus());
+	}
 
-		return s;
+	public String getTotalScore() {
+		return getScore().toString();
 	}
 
 	public void updateRobotPresence(Cell cell) {
-		for (int i = 0; i < MainFrame.robots.size(); i++) {
-			final Robot robot = MainFrame.robots.get(i);
+		for (int i = 0; i < context.getRobots().size(); i++) {
+			final Robot robot = context.getRobots().get(i);
 
 			if (robot.getLocation().equals(cell) && Type.ROBOT == robot.getType()) {
 				cell.setRobotPresence(true);
@@ -1099,4 +1777,13 @@ public class Map implements RobotPerception {
 		return fileName;
 	}
 
+	/**
+	 * Returns true if the map was loaded from its file without an error
+	 * 
+	 * @return False if the file was missing or could not be read
+	 */
+	boolean isLoaded() {
+		return !loadFailed && width > 0 && height > 0;
+	}
+
 }
@@ -0,0 +1,460 @@
+package world;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Procedural generator of large maps for scale testing.
+ *
+ * The building is split recursively into rooms. Large areas are divided by
+ * two cells wide corridors with doors on both sides, smaller areas by a wall
+ * with one or more doors, so every cell is reachable from the start. Exits are
+ * placed on the border of the map, obstacles inside the rooms and injured on
+ * random free cells. The output is the text format read by Map and depends
+ * only on the parameters and the seed.
+ */
+public class MapGenerator {
+	/** Smallest room side */
+	private static final int MIN_ROOM = 3;
+	/** Range of the largest room side, chosen per area */
+	private static final int MIN_MAX_ROOM = 5, MAX_MAX_ROOM = 12;
+	/** Areas with a side at least this long are divided by a corridor */
+	private static final int CORRIDOR_SPLIT = 24;
+	/** Average distance of the doors along a corridor */
+	private static final int CORRIDOR_DOOR_DISTANCE = 8;
+	/** Wall length per additional door of a room wall */
+	private static final int WALL_DOOR_LENGTH = 16;
+	/** Chance of an obstacle on a room cell */
+	private static final double OBSTACLE_DENSITY = 0.12;
+	/** Number of cells kept free right of the start for the robots */
+	private static final int START_ROW = 8;
+	/** Obstacle images placed in the rooms */
+	private static final String[] OBSTACLES = { "desk10", "desk11", "desk12", "desk13", "chair10", "chair11",
+			"chair12", "chair13", "sofa10", "sofa11" };
+	/** Number of floor colors of the PaintPanel */
+	private static final int FLOOR_COLORS = 9;
+
+	/** Cell types of the generated map */
+	private static final byte FREE = 0, DOOR = 1, EXIT = 2, START = 3, OBSTACLE = 4, INJURED = 5;
+
+	private final int width, height;
+	private final SplittableRandom random;
+	/** Wall codes of the cells */
+	private final byte[][] walls;
+	/** Cell types of the cells */
+	private final byte[][] types;
+	/** Obstacle image of the cells */
+	private final String[][] obstacles;
+	/** Health of the injured of the cells */
+	private final short[][] health;
+	/** Generated rooms as x0, y0, x1, y1, corridor (0 or 1) */
+	private final ArrayList<int[]> rooms = new ArrayList<>();
+
+	/**
+	 * Main method of the generator
+	 *
+	 * Arguments: file width height [injured] [exits] [seed]
+	 * The map is written to the maps folder.
+	 *
+	 * @param args
+	 *            The command line arguments
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: MapGenerator <file> <width> <height> [injured] [exits] [seed]");
+			System.exit(1);
+		}
+
+		int width = Integer.parseInt(args[1]);
+		int height = Integer.parseInt(args[2]);
+		int injuredCount = args.length >= 4 ? Integer.parseInt(args[3]) : defaultInjuredCount(width, height);
+		int exitCount = args.length >= 5 ? Integer.parseInt(args[4]) : defaultExitCount(width, height);
+		long seed = args.length >= 6 ? Long.parseLong(args[5]) : 0;
+
+		generate("maps/" + args[0], width, height, injuredCount, exitCount, seed);
+	}
+
+	/**
+	 * Generate a map with the default number of injured and exits and save it
+	 *
+	 * @param fileName
+	 *            Path of the map file to write
+	 * @param width
+	 *            Width of the map
+	 * @param height
+	 *            Height of the map
+	 * @param seed
+	 *            Seed of the generator
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public static void generate(String fileName, int width, int height, long seed) throws IOException {
+		generate(fileName, width, height, defaultInjuredCount(width, height), defaultExitCount(width, height), seed);
+	}
+
+	/**
+	 * Generate a map and save it
+	 *
+	 * @param fileName
+	 *            Path of the map file to write
+	 * @param width
+	 *            Width of the map
+	 * @param height
+	 *            Height of the map
+	 * @param injuredCount
+	 *            Number of injured
+	 * @param exitCount
+	 *            Number of exits
+	 * @param seed
+	 *            Seed of the generator
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public static void generate(String fileName, int width, int height, int injuredCount, int exitCount, long seed)
+			throws IOException {
+		if (width < 2 * MIN_ROOM || height < 2 * MIN_ROOM)
+			throw new IllegalArgumentException("Map size " + width + "x" + height + " is too small");
+
+		MapGenerator generator = new MapGenerator(width, height, seed);
+		generator.split(0, 0, width - 1, height - 1);
+		generator.placeStart();
+		generator.placeExits(exitCount);
+		generator.placeObstacles();
+		generator.placeInjureds(injuredCount);
+
+		try (Writer writer = new BufferedWriter(new FileWriter(fileName))) {
+			generator.write(writer, seed);
+		}
+	}
+
+	/**
+	 * Returns the default number of injured: one per 500 cells
+	 */
+	private static int defaultInjuredCount(int width, int height) {
+		return width * height / 500;
+	}
+
+	/**
+	 * Returns the default number of exits: one per 64 cells of width and height
+	 */
+	private static int defaultExitCount(int width, int height) {
+		return Math.max(1, (width + height) / 64);
+	}
+
+	private MapGenerator(int width, int height, long seed) {
+		this.width = width;
+		this.height = height;
+		random = new SplittableRandom(seed);
+		walls = new byte[width][height];
+		types = new byte[width][height];
+		obstacles = new String[width][height];
+		health = new short[width][height];
+	}
+
+	/**
+	 * Divide an area into rooms and corridors
+	 *
+	 * @param x0
+	 *            Left column of the area
+	 * @param y0
+	 *            Top row of the area
+	 * @param x1
+	 *            Right column of the area
+	 * @param y1
+	 *            Bottom row of the area
+	 */
+	private void split(int x0, int y0, int x1, int y1) {
+		int w = x1 - x0 + 1;
+		int h = y1 - y0 + 1;
+		int maxRoom = MIN_MAX_ROOM + random.nextInt(MAX_MAX_ROOM - MIN_MAX_ROOM + 1);
+		boolean vertical = w > h || (w == h && random.nextBoolean());
+		int length = vertical ? w : h;
+
+		if ((w <= maxRoom && h <= maxRoom) || length < 2 * MIN_ROOM) {
+			rooms.add(new int[] { x0, y0, x1, y1, 0 });
+			return;
+		}
+
+		int first = vertical ? x0 : y0;
+		if (length >= CORRIDOR_SPLIT) {
+			// Corridor in the middle half of the area
+			int s = first + length / 4 + random.nextInt(length / 2 - 1);
+			if (vertical) {
+				rooms.add(new int[] { s, y0, s + 1, y1, 1 });
+				corridorWall(s - 1, y0, y1, true, true);
+				corridorWall(s + 2, y0, y1, true, false);
+				split(x0, y0, s - 1, y1);
+				split(s + 2, y0, x1, y1);
+			} else {
+				rooms.add(new int[] { x0, s, x1, s + 1, 1 });
+				corridorWall(s - 1, x0, x1, false, true);
+				corridorWall(s + 2, x0, x1, false, false);
+				split(x0, y0, x1, s - 1);
+				split(x0, s + 2, x1, y1);
+			}
+		} else {
+			// Wall between two rooms, s is the first cell of the second room
+			int s = first + MIN_ROOM + random.nextInt(length - 2 * MIN_ROOM + 1);
+			int from = vertical ? y0 : x0;
+			int to = vertical ? y1 : x1;
+			for (int i = from; i <= to; i++) {
+				if (vertical)
+					addWall(s - 1, i, 1);
+				else
+					addWall(i, s - 1, 2);
+			}
+
+			int doors = 1 + (to - from + 1) / WALL_DOOR_LENGTH;
+			for (int d = 0; d < doors; d++) {
+				int i = from + random.nextInt(to - from + 1);
+				int side = s - random.nextInt(2);
+				if (vertical) {
+					removeWall(s - 1, i, 1);
+					types[side][i] = DOOR;
+				} else {
+					removeWall(i, s - 1, 2);
+					types[i][side] = DOOR;
+				}
+			}
+
+			if (vertical) {
+				split(x0, y0, s - 1, y1);
+				split(s, y0, x1, y1);
+			} else {
+				split(x0, y0, x1, s - 1);
+				split(x0, s, x1, y1);
+			}
+		}
+	}
+
+	/**
+	 * Build the wall between a corridor and the rooms next to it, with doors in
+	 * the rooms
+	 *
+	 * @param line
+	 *            Column (vertical) or row of the room cells next to the corridor
+	 * @param from
+	 *            First cell of the wall along the corridor
+	 * @param to
+	 *            Last cell of the wall along the corridor
+	 * @param vertical
+	 *            True if the corridor is vertical
+	 * @param before
+	 *            True if the rooms are left or above the corridor
+	 */
+	private void corridorWall(int line, int from, int to, boolean vertical, boolean before) {
+		int direction = vertical ? (before ? 1 : 3) : (before ? 2 : 0);
+		for (int i = from; i <= to; i++) {
+			if (vertical)
+				addWall(line, i, direction);
+			else
+				addWall(i, line, direction);
+		}
+
+		for (int i = from + random.nextInt(Math.min(CORRIDOR_DOOR_DISTANCE, to - from + 1)); i <= to; i += CORRIDOR_DOOR_DISTANCE / 2
+				+ random.nextInt(CORRIDOR_DOOR_DISTANCE)) {
+			int x = vertical ? line : i;
+			int y = vertical ? i : line;
+			removeWall(x, y, direction);
+			types[x][y] = DOOR;
+		}
+	}
+
+	/**
+	 * Add a wall to a cell and to its neighbour
+	 */
+	private void addWall(int x, int y, int direction) {
+		walls[x][y] |= 1 << direction;
+		int nx = x + (direction == 1 ? 1 : direction == 3 ? -1 : 0);
+		int ny = y + (direction == 2 ? 1 : direction == 0 ? -1 : 0);
+		if (nx >= 0 && ny >= 0 && nx < width && ny < height)
+			walls[nx][ny] |= 1 << ((direction + 2) % 4);
+	}
+
+	/**
+	 * Remove a wall from a cell and from its neighbour
+	 */
+	private void removeWall(int x, int y, int direction) {
+		walls[x][y] &= ~(1 << direction);
+		int nx = x + (direction == 1 ? 1 : direction == 3 ? -1 : 0);
+		int ny = y + (direction == 2 ? 1 : direction == 0 ? -1 : 0);
+		if (nx >= 0 && ny >= 0 && nx < width && ny < height)
+			walls[nx][ny] &= ~(1 << ((direction + 2) % 4));
+	}
+
+	/**
+	 * Place the start in the widest room and keep the cells right of it free
+	 */
+	private void placeStart() {
+		int[] widest = rooms.get(0);
+		for (int[] room : rooms) {
+			if (room[4] == 0 && room[2] - room[0] > widest[2] - widest[0])
+				widest = room;
+		}
+
+		int x = widest[0] + 1;
+		int y = (widest[1] + widest[3]) / 2;
+		types[x][y] = START;
+		for (int i = x + 1; i < Math.min(x + START_ROW, widest[2]); i++) {
+			// Reserved for the robots, nothing else is placed here
+			types[i][y] = START;
+		}
+	}
+
+	/**
+	 * Place exits on random border cells
+	 */
+	private void placeExits(int exitCount) {
+		int perimeter = 2 * (width + height) - 4;
+		for (int placed = 0, tries = 0; placed < exitCount && tries < 100 * exitCount; tries++) {
+			int p = random.nextInt(perimeter);
+			int x, y;
+			if (p < width) {
+				x = p;
+				y = 0;
+			} else if (p < 2 * width) {
+				x = p - width;
+				y = height - 1;
+			} else {
+				x = (p - 2 * width) % 2 == 0 ? 0 : width - 1;
+				y = 1 + (p - 2 * width) / 2;
+			}
+
+			if (types[x][y] == FREE) {
+				types[x][y] = EXIT;
+				placed++;
+			}
+		}
+	}
+
+	/**
+	 * Place obstacles inside the rooms. An obstacle is never next to a room
+	 * wall or another obstacle, so the cells around it stay connected and the
+	 * rooms remain passable.
+	 */
+	private void placeObstacles() {
+		for (int[] room : rooms) {
+			if (room[4] != 0)
+				continue;
+
+			for (int x = room[0] + 1; x < room[2]; x++) {
+				for (int y = room[1] + 1; y < room[3]; y++) {
+					if (random.nextDouble() >= OBSTACLE_DENSITY || !isClear(x, y))
+						continue;
+
+					types[x][y] = OBSTACLE;
+					obstacles[x][y] = OBSTACLES[random.nextInt(OBSTACLES.length)];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the cell and its eight neighbours hold no obstacle and
+	 * the cell is free
+	 */
+	private boolean isClear(int x, int y) {
+		if (types[x][y] != FREE)
+			return false;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if (types[x + dx][y + dy] == OBSTACLE)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Place injured on random free cells
+	 */
+	private void placeInjureds(int injuredCount) {
+		ArrayList<int[]> free = new ArrayList<>();
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (types[x][y] == FREE)
+					free.add(new int[] { x, y });
+			}
+		}
+		if (injuredCount > free.size())
+			throw new IllegalArgumentException("Only " + free.size() + " free cells for " + injuredCount + " injured");
+
+		// Partial Fisher-Yates shuffle of the free cells
+		for (int i = 0; i < injuredCount; i++) {
+			int j = i + random.nextInt(free.size() - i);
+			int[] cell = free.get(j);
+			free.set(j, free.get(i));
+			free.set(i, cell);
+			types[cell[0]][cell[1]] = INJURED;
+			health[cell[0]][cell[1]] = (short) random.nextInt(1000);
+		}
+	}
+
+	/**
+	 * Write the map in the text format of Map
+	 */
+	private void write(Writer writer, long seed) throws IOException {
+		writer.write("// Generated map, seed " + seed + "\n");
+		writer.write("// Map size\n");
+		writer.write(width + " " + height + "\n\n");
+
+		writer.write("// Cell borders\n");
+		StringBuilder line = new StringBuilder(width * 2);
+		boolean start = false;
+		for (int y = 0; y < height; y++) {
+			line.setLength(0);
+			for (int x = 0; x < width; x++) {
+				if (types[x][y] == EXIT) {
+					line.append('X');
+				} else if (types[x][y] == START && !start) {
+					// Only the first reserved cell is the start
+					line.append('S');
+					start = true;
+				} else if (types[x][y] == DOOR) {
+					line.append('_');
+				} else if (walls[x][y] == 0) {
+					line.append('.');
+				} else {
+					line.append(Character.toUpperCase(Character.forDigit(walls[x][y], 16)));
+				}
+				line.append(' ');
+			}
+			line.append('\n');
+			writer.write(line.toString());
+		}
+
+		writer.write("\n// Floors\n");
+		for (int[] room : rooms) {
+			int color = room[4] != 0 ? 0 : random.nextInt(FLOOR_COLORS);
+			for (int x = room[0]; x <= room[2]; x++) {
+				int y = room[1];
+				while (y <= room[3] && (types[x][y] == DOOR || types[x][y] == EXIT))
+					y++;
+				if (y <= room[3]) {
+					writer.write("Floor " + x + " " + y + " " + color + "\n");
+					break;
+				}
+			}
+		}
+
+		writer.write("\n// Obstacles\n");
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (types[x][y] == OBSTACLE)
+					writer.write("Obstacle " + x + " " + y + " " + obstacles[x][y] + "\n");
+			}
+		}
+
+		writer.write("\n// Injureds\n");
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (types[x][y] == INJURED)
+					writer.write("Injured " + x + " " + y + " " + health[x][y] + "\n");
+			}
+		}
+	}
+}
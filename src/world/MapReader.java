@@ -0,0 +1,245 @@
+package world;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Tokenizer of the map text format. The file is read through a fixed byte
+ * buffer and numbers and cell codes are parsed in place, so the rows of the
+ * map are read without creating strings.
+ */
+class MapReader implements Closeable {
+	/** Cell code bits of the special cells (the low four bits are the walls) */
+	static final int EXIT = 1 << 4, START = 1 << 5, DOOR = 1 << 6;
+
+	/** Size of the read buffer */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final InputStream input;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	/** Number of valid bytes in the buffer */
+	private int length = 0;
+	/** Position of the next byte in the buffer */
+	private int position = 0;
+	/** Number of the current line (1 based) */
+	private int lineNumber = 0;
+	/** True after nextLine until the end of the line is reached */
+	private boolean inLine = false;
+
+	/**
+	 * Open a map file
+	 *
+	 * @param file
+	 *            The map file
+	 * @throws IOException
+	 *             If the file cannot be opened
+	 */
+	MapReader(File file) throws IOException {
+		input = new FileInputStream(file);
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+
+	/**
+	 * Returns the next byte without consuming it
+	 *
+	 * @return The next byte or -1 at the end of the file
+	 */
+	private int peek() throws IOException {
+		if (position == length) {
+			length = input.read(buffer);
+			position = 0;
+			if (length <= 0) {
+				length = 0;
+				return -1;
+			}
+		}
+		return buffer[position] & 0xFF;
+	}
+
+	/**
+	 * Skip white space (except line ends) like String.trim does
+	 */
+	private void skipSpaces() throws IOException {
+		int b;
+		while ((b = peek()) != -1 && b != '\n' && b <= ' ')
+			position++;
+	}
+
+	/**
+	 * Skip the rest of the current line including the line end
+	 */
+	private void skipLine() throws IOException {
+		int b;
+		while ((b = peek()) != -1) {
+			position++;
+			if (b == '\n')
+				break;
+		}
+		inLine = false;
+	}
+
+	/**
+	 * Move to the next line with content, skipping the rest of the current
+	 * line, empty lines and comment lines (starting with # or //)
+	 *
+	 * @return False at the end of the file
+	 */
+	boolean nextLine() throws IOException {
+		if (inLine)
+			skipLine();
+
+		while (true) {
+			lineNumber++;
+			skipSpaces();
+			int b = peek();
+			if (b == -1) {
+				return false;
+			} else if (b == '\n') {
+				position++;
+			} else if (b == '#' || (b == '/' && peekSecond() == '/')) {
+				skipLine();
+			} else {
+				inLine = true;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the byte after the next one without consuming them
+	 */
+	private int peekSecond() throws IOException {
+		if (position + 1 < length)
+			return buffer[position + 1] & 0xFF;
+
+		// Keep the next byte and refill the rest of the buffer
+		buffer[0] = buffer[position];
+		int read = input.read(buffer, 1, BUFFER_SIZE - 1);
+		length = 1 + Math.max(read, 0);
+		position = 0;
+		return length > 1 ? buffer[1] & 0xFF : -1;
+	}
+
+	/**
+	 * Returns true if the current line has more tokens
+	 *
+	 * @return True if a token follows on the current line
+	 */
+	boolean hasToken() throws IOException {
+		skipSpaces();
+		int b = peek();
+		return b != -1 && b != '\n';
+	}
+
+	/**
+	 * Returns true if the byte ends a token
+	 */
+	private static boolean isSeparator(int b) {
+		return b <= ' ';
+	}
+
+	/**
+	 * Read a decimal integer token
+	 *
+	 * @return The value of the token
+	 * @throws IOException
+	 *             If the token is missing or not a number
+	 */
+	int nextInt() throws IOException {
+		if (!hasToken())
+			throw new IOException("Number expected on line " + lineNumber);
+
+		boolean negative = peek() == '-';
+		if (negative)
+			position++;
+
+		int value = 0;
+		int digits = 0;
+		int b;
+		while ((b = peek()) != -1 && !isSeparator(b)) {
+			if (b < '0' || b > '9')
+				throw new IOException("Invalid number on line " + lineNumber);
+			value = value * 10 + (b - '0');
+			digits++;
+			position++;
+		}
+		if (digits == 0)
+			throw new IOException("Invalid number on line " + lineNumber);
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Read a cell code token: X (exit), S (start), _ (door), . (no walls) or
+	 * the hexadecimal wall code
+	 *
+	 * @return The wall bits combined with the EXIT, START or DOOR bit
+	 * @throws IOException
+	 *             If the token is missing or invalid
+	 */
+	int nextCellCode() throws IOException {
+		if (!hasToken())
+			throw new IOException("Cell code expected on line " + lineNumber);
+
+		int b = peek();
+		position++;
+		if (isSeparator(peek())) {
+			// Single character codes
+			switch (b) {
+			case 'X':
+				return EXIT;
+			case 'S':
+				return START;
+			case '_':
+				return DOOR;
+			case '.':
+				return 0;
+			}
+		}
+
+		int value = Character.digit(b, 16);
+		while (value != -1 && (b = peek()) != -1 && !isSeparator(b)) {
+			int digit = Character.digit(b, 16);
+			value = digit == -1 ? -1 : (value << 4) | digit;
+			position++;
+		}
+		if (value == -1)
+			throw new IOException("Invalid cell code on line " + lineNumber);
+		return value & 0xF;
+	}
+
+	/**
+	 * Read a token as string
+	 *
+	 * @return The token
+	 * @throws IOException
+	 *             If the token is missing
+	 */
+	String nextToken() throws IOException {
+		if (!hasToken())
+			throw new IOException("Token expected on line " + lineNumber);
+
+		StringBuilder token = new StringBuilder();
+		int b;
+		while ((b = peek()) != -1 && !isSeparator(b)) {
+			token.append((char) b);
+			position++;
+		}
+		return token.toString();
+	}
+
+	/**
+	 * Returns the number of the current line
+	 *
+	 * @return The line number (1 based)
+	 */
+	int getLineNumber() {
+		return lineNumber;
+	}
+}
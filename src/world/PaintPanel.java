@@ -171,12 +171,12 @@ public class PaintPanel extends JPanel {
 					drawCellWalls(g2, cell, cellSize);
 				}
 				/** Highlights the collapsed walls */
-				if (map.getCell(x, y).destroyed) {
+				if (map.getCell(x, y).isDestroyed()) {
 					if (!discovered.getCell(x, y).isDiscovered()) {
 						g2.setColor(new Color(255, 0, 0, 180));
 						g2.setStroke(new BasicStroke(0));
 						g2.fillRect(x * cellSize + 1, y * cellSize + 1, cellSize - 1, cellSize - 1);
-					}else if(!discovered.getCell(x, y).seenSinceDest) {
+					}else if(!discovered.getCell(x, y).isSeenSinceDest()) {
 						g2.setColor(new Color(255, 0, 0, 180));
 						g2.setStroke(new BasicStroke(0));
 						g2.fillRect(x * cellSize + 1, y * cellSize + 1, cellSize - 1, cellSize - 1);						
@@ -14,6 +14,10 @@ public class Path {
     private List<CellInfo> path = new ArrayList<>();
     /** Display color of the path */
     private Color color = Color.MAGENTA;
+    /** Position of the cell found by the last getNextCell call */
+    private int position = 0;
+    /** True if the search skipped cells because of robots */
+    private boolean aroundRobots = false;
 
     /**
      * Return the color setting of the path
@@ -30,6 +34,23 @@ public class Path {
     public void setColor(Color color) {
         this.color = color;
     }
+
+    /**
+     * Return true if the path leads around robots, so it depends on where
+     * the robots stood at the search
+     * @return          True if robots were in the way of the search
+     */
+    public boolean isAroundRobots() {
+        return aroundRobots;
+    }
+
+    /**
+     * Set whether robots were in the way of the search
+     * @param aroundRobots  True if the search skipped cells with robots
+     */
+    void setAroundRobots(boolean aroundRobots) {
+        this.aroundRobots = aroundRobots;
+    }
     
     /** 
      * Return cells building up the path
@@ -59,12 +80,23 @@ public class Path {
     }
     
     /**
-     * Return the first cell along the path
-     * @return          The first cell along the path
+     * Return the cell following a cell of the path. A robot following the
+     * path is on the cell of the last call or on the next one, these are
+     * checked first.
+     * @param from      The cell on the path
+     * @return          The next cell along the path or null
      */
     public CellInfo getNextCell(CellInfo from) {
+        for (int i=position; i<position+2 && i<path.size(); i++) {
+            if (path.get(i).equals(from)) {
+                position = i;
+                return i<path.size()-1 ? path.get(i+1) : null;
+            }
+        }
+
         for (int i=0; i<path.size(); i++) {
             if (path.get(i).equals(from)) {
+                position = i;
                 if (i<path.size()-1) {
                     return path.get(i+1);
                 }
@@ -74,6 +106,18 @@ public class Path {
         
         return null;
     }
+
+    /**
+     * Return true if the robot can step from a cell of the path to the next
+     * one: the next cell is known, free and its wall has not been destroyed
+     * since it was seen. The last cell of the path may be occupied.
+     * @param from      The cell on the path
+     * @return          False if the path ends or is blocked at the next cell
+     */
+    public boolean isNextCellFree(CellInfo from) {
+        CellInfo next = getNextCell(from);
+        return next != null && PathPlanner.isAccessible((Cell) next, position+1 == path.size()-1, false);
+    }
     
     /**
      * Return the start cell of the path
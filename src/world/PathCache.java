@@ -0,0 +1,102 @@
+package world;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import interfaces.CellInfo;
+
+/**
+ * Least recently used cache of the paths between two cells. A path is tagged
+ * with the topology version of the map it was searched on and it is returned
+ * only while the version is the same. Robots do not change the version, so
+ * the cells of a hit are checked along the path.
+ */
+class PathCache {
+	/**
+	 * A cached path
+	 */
+	private static class CachedPath {
+		/** The path found */
+		final Path path;
+		/** The map the path was searched on */
+		final Map map;
+		/** Topology version of the map at the search */
+		final long topologyVersion;
+
+		CachedPath(Path path, Map map, long topologyVersion) {
+			this.path = path;
+			this.map = map;
+			this.topologyVersion = topologyVersion;
+		}
+	}
+
+	/** The cached paths in access order, keyed by start, target and drone flag */
+	private final LinkedHashMap<Long, CachedPath> paths;
+
+	/**
+	 * Create an empty cache
+	 *
+	 * @param capacity
+	 *            The number of paths kept, the least recently used path is
+	 *            dropped above this
+	 */
+	PathCache(int capacity) {
+		paths = new LinkedHashMap<Long, CachedPath>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(java.util.Map.Entry<Long, CachedPath> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached path between two cells if the topology of their map
+	 * has not changed since the search and the path is still accessible
+	 *
+	 * @param start
+	 *            The start cell
+	 * @param target
+	 *            The target cell
+	 * @param isPathForDrone
+	 *            True for paths ignoring obstacles and other robots
+	 * @return The cached path or null
+	 */
+	Path get(Cell start, Cell target, boolean isPathForDrone) {
+		CachedPath cached = paths.get(key(start, target, isPathForDrone));
+		if (cached == null || cached.map != start.map || cached.topologyVersion != start.map.getTopologyVersion())
+			return null;
+
+		// The walls and obstacles are the same, only robots may block the path now
+		List<CellInfo> cells = cached.path.getPath();
+		for (int i = 1; i < cells.size(); i++) {
+			if (!PathPlanner.isAccessible((Cell) cells.get(i), i == cells.size() - 1, isPathForDrone))
+				return null;
+		}
+		return cached.path;
+	}
+
+	/**
+	 * Add a path to the cache
+	 *
+	 * @param start
+	 *            The start cell
+	 * @param target
+	 *            The target cell
+	 * @param isPathForDrone
+	 *            True for paths ignoring obstacles and other robots
+	 * @param path
+	 *            The path found between the cells
+	 */
+	void put(Cell start, Cell target, boolean isPathForDrone, Path path) {
+		paths.put(key(start, target, isPathForDrone), new CachedPath(path, start.map, start.map.getTopologyVersion()));
+	}
+
+	/**
+	 * Returns the key of a path
+	 */
+	private static Long key(Cell start, Cell target, boolean isPathForDrone) {
+		return (long) start.getIndex() << 33 | (long) target.getIndex() << 1 | (isPathForDrone ? 1 : 0);
+	}
+}
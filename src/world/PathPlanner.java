@@ -0,0 +1,666 @@
+package world;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import rescueframework.RescueFramework;
+
+/**
+ * Reusable A* search state owned by a single thread or robot control.
+ * All working arrays are preallocated and stamped with a search generation,
+ * so starting a new search is O(1) and the search loop does not allocate.
+ */
+public class PathPlanner {
+    /** X offsets of the four directions (up, right, down, left) */
+    private static final int[] DX = {0, 1, 0, -1};
+    /** Y offsets of the four directions (up, right, down, left) */
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    /** Generation of the current search */
+    private int generation = 0;
+    /** Generation in which the cell was put on the open list, indexed by x*height+y */
+    private int[] stamp = new int[0];
+    /** Total path length to the cells */
+    private int[] sumG = new int[0];
+    /** Parent cell index of the cells (-1 for the start cell) */
+    private int[] parent = new int[0];
+    /** Generation in which the cell was marked as a target, indexed by x*height+y */
+    private int[] targetStamp = new int[0];
+
+    /** Binary heap of the open list: cell indices */
+    private int[] heapCell = new int[0];
+    /** Binary heap of the open list: F values */
+    private int[] heapF = new int[0];
+    /** Binary heap of the open list: insertion order (tie breaker) */
+    private int[] heapOrder = new int[0];
+    /** Number of nodes on the open list */
+    private int heapSize = 0;
+
+    /** True if a robot was in the way of the last search */
+    private boolean robotInTheWay = false;
+
+    /** Cell grid of the current jump point search */
+    private CellGrid jumpGrid;
+    /** Size of the map of the current jump point search */
+    private int jumpWidth, jumpHeight;
+    /** Index of the target cell of the current jump point search */
+    private int jumpTarget;
+
+    /**
+     * Find path between start and target no longer than maxDistance
+     *
+     * @param start         The start cell to search from
+     * @param target        The target cell to search to
+     * @param maxDistance   The maximum length of the path to consider
+     * @param color         Color of the path
+     * @return              A Path if exists between start and target or NULL
+     */
+    public Path search(Cell start, Cell target, int maxDistance, Color color) {
+        Path result = search(start, target, maxDistance, false);
+        if (result != null) result.setColor(color);
+        return result;
+    }
+
+    /**
+     * Find path between start and target no longer than maxDistance
+     *
+     * @param start         The start cell to search from
+     * @param target        The target cell to search to
+     * @param maxDistance   The maximum length of the path to consider
+     * @return              A Path if exists between start and target or NULL
+     */
+    public Path search(Cell start, Cell target, int maxDistance) {
+        return search(start, target, maxDistance, false);
+    }
+
+    /**
+     * Find path between start and target no longer than maxDistance.
+     * Gives path through obstacles and other robots.
+     *
+     * @param start         The start cell to search from
+     * @param target        The target cell to search to
+     * @param maxDistance   The maximum length of the path to consider
+     * @param color         Color of the path
+     * @return              A Path if exists between start and target or NULL
+     */
+    public Path searchPathForDrone(Cell start, Cell target, int maxDistance, Color color) {
+        Path result = search(start, target, maxDistance, true);
+        if (result != null) result.setColor(color);
+        return result;
+    }
+
+    private Path search(Cell start, Cell target, int maxDistance, boolean isPathForDrone) {
+        isPathForDrone = false;
+        // Ignore targets too far
+        if (maxDistance > 0 && start.rawDistanceFrom(target) > maxDistance) return null;
+
+        // Disable console logging
+        boolean verbose = false;
+        if (verbose) RescueFramework.log("PathPlanner between "+start.getX()+"x"+start.getY()+" and "+target.getX()+"x"+target.getY()+" max distance "+maxDistance);
+
+        Map map = start.map;
+        int height = map.getHeight();
+        reset(map.getWidth()*height);
+        int nextOrder = 0;
+
+        // Init the start cell and add to the open list
+        int startIndex = start.getIndex();
+        open(startIndex, 0, -1, heuristics(start, target), nextOrder++);
+
+        // Loop while the open list is not empty
+        while (heapSize > 0) {
+            // Expand node with best F (the earliest added one on ties)
+            int selectedIndex = poll();
+            Cell selectedCell = map.cells[selectedIndex / height][selectedIndex % height];
+            int selectedG = sumG[selectedIndex];
+
+            // Check max distance constraint
+            if (maxDistance > 0 && selectedG > maxDistance) {
+                if (verbose) RescueFramework.log("    Max distance reached ("+maxDistance+"), giving up!");
+                return null;
+            }
+
+            // Check if target reached
+            if (selectedCell.equals(target)) {
+                if (verbose) RescueFramework.log("    Target reached: "+target.getX()+" x "+target.getY()+".");
+                return buildPath(map, selectedIndex);
+            }
+
+            // Add known neighbours to the open list
+            for (int dir = 0; dir < 4; dir++) {
+                Cell possibleNeighbour = selectedCell.getAccessibleNeigbour(dir);
+                if (possibleNeighbour == null) continue;
+                boolean isTarget = possibleNeighbour.equals(target);
+
+                if (!isAccessible(possibleNeighbour, isTarget, isPathForDrone)) {
+                    robotInTheWay |= possibleNeighbour.hasRobot();
+                    continue;
+                }
+
+                // Skip cells already on the open or closed list (stamped in this generation)
+                int neighbourIndex = possibleNeighbour.getIndex();
+                if (stamp[neighbourIndex] == generation) continue;
+
+                open(neighbourIndex, selectedG+1, selectedIndex, heuristics(possibleNeighbour, target), nextOrder++);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns true if a robot was in the way of the last search, so the path
+     * found depends on the position of the robots
+     *
+     * @return              True if a cell was skipped because of a robot
+     */
+    boolean isRobotInTheWay() {
+        return robotInTheWay;
+    }
+
+    /**
+     * Find path between start and target no longer than maxDistance with
+     * jump point search. Only the cells where the path may turn are put on
+     * the open list, the straight runs between them are scanned without
+     * expanding the cells. The path is a shortest one. search does not
+     * reopen cells, so its path may occasionally be longer, and the two may
+     * differ even if they have the same length. Like search, the path is
+     * marked as leading around robots if a scan stopped at a robot.
+     *
+     * Vertical moves are followed by horizontal scans from every cell.
+     * Horizontal scans stop where a vertical move becomes possible that was
+     * blocked from the previous cell (a forced neighbour), so paths turn
+     * from horizontal to vertical only there.
+     *
+     * @param start         The start cell to search from
+     * @param target        The target cell to search to
+     * @param maxDistance   The maximum length of the path to consider
+     * @return              A Path if exists between start and target or NULL
+     */
+    public Path searchJumpPoints(Cell start, Cell target, int maxDistance) {
+        // Ignore targets too far
+        if (maxDistance > 0 && start.rawDistanceFrom(target) > maxDistance) return null;
+
+        Map map = start.map;
+        int height = map.getHeight();
+        reset(map.getWidth()*height);
+        jumpGrid = map.grid;
+        jumpWidth = map.getWidth();
+        jumpHeight = height;
+        jumpTarget = target.getIndex();
+        int targetX = target.getX(), targetY = target.getY();
+        int nextOrder = 0;
+
+        // Undiscovered cells have no known neighbours
+        int startIndex = start.getIndex();
+        if (startIndex != jumpTarget && !start.isDiscovered()) return null;
+        open(startIndex, 0, -1, heuristics(start, target), nextOrder++);
+
+        while (heapSize > 0) {
+            int selectedF = heapF[0];
+            int selectedIndex = poll();
+            int x = selectedIndex / height, y = selectedIndex % height;
+            int selectedG = sumG[selectedIndex];
+            // Skip entries replaced by a shorter path
+            if (selectedF != selectedG + Math.abs(x-targetX) + Math.abs(y-targetY)) continue;
+
+            if (maxDistance > 0 && selectedG > maxDistance) return null;
+            if (selectedIndex == jumpTarget) return buildJumpPath(map, selectedIndex);
+
+            // Direction the cell was reached from (-1 for the start)
+            int parentIndex = parent[selectedIndex];
+            int arrival = parentIndex == -1 ? -1 : direction(height, parentIndex, selectedIndex);
+
+            for (int dir = 0; dir < 4; dir++) {
+                if (arrival != -1) {
+                    if (dir == (arrival + 2) % 4) continue;
+                    // Horizontal runs turn only at forced neighbours
+                    if (isHorizontal(arrival) && !isHorizontal(dir)
+                            && !isForced(selectedIndex - DX[arrival]*height, selectedIndex, x, y, arrival, dir)) continue;
+                }
+
+                int jumpIndex = isHorizontal(dir) ? jumpHorizontal(selectedIndex, x, y, dir) : jumpVertical(selectedIndex, x, y, dir);
+                if (jumpIndex == -1) continue;
+
+                int jumpX = jumpIndex / height, jumpY = jumpIndex % height;
+                int jumpG = selectedG + Math.abs(jumpX-x) + Math.abs(jumpY-y);
+                if (stamp[jumpIndex] == generation && sumG[jumpIndex] <= jumpG) continue;
+                open(jumpIndex, jumpG, selectedIndex, Math.abs(jumpX-targetX) + Math.abs(jumpY-targetY), nextOrder++);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Scan from a cell in a horizontal direction until the target, a cell
+     * with a forced neighbour or a blocked cell is reached
+     *
+     * @param index         Index of the cell to scan from
+     * @param x             X coordinate of the cell
+     * @param y             Y coordinate of the cell
+     * @param dir           The horizontal direction
+     * @return              Index of the jump point found or -1
+     */
+    private int jumpHorizontal(int index, int x, int y, int dir) {
+        while (true) {
+            int next = jumpNeighbour(index, x, y, dir);
+            if (next == -1) return -1;
+            x += DX[dir];
+            if (next == jumpTarget || isForced(index, next, x, y, dir, 0) || isForced(index, next, x, y, dir, 2)) return next;
+            index = next;
+        }
+    }
+
+    /**
+     * Scan from a cell in a vertical direction until the target or a cell
+     * whose horizontal scans find a jump point is reached
+     *
+     * @param index         Index of the cell to scan from
+     * @param x             X coordinate of the cell
+     * @param y             Y coordinate of the cell
+     * @param dir           The vertical direction
+     * @return              Index of the jump point found or -1
+     */
+    private int jumpVertical(int index, int x, int y, int dir) {
+        while (true) {
+            int next = jumpNeighbour(index, x, y, dir);
+            if (next == -1) return -1;
+            y += DY[dir];
+            if (next == jumpTarget || jumpHorizontal(next, x, y, 1) != -1 || jumpHorizontal(next, x, y, 3) != -1) return next;
+            index = next;
+        }
+    }
+
+    /**
+     * Returns true if the vertical neighbour of a cell reached horizontally
+     * can not be reached as fast through the vertical neighbour of the
+     * previous cell
+     *
+     * @param previous      Index of the previous cell of the horizontal run
+     * @param current       Index of the cell reached
+     * @param x             X coordinate of the cell reached
+     * @param y             Y coordinate of the cell reached
+     * @param dir           The horizontal direction of the run
+     * @param vertical      The vertical direction to check
+     * @return              True if the path has to turn at the cell
+     */
+    private boolean isForced(int previous, int current, int x, int y, int dir, int vertical) {
+        if (jumpNeighbour(current, x, y, vertical) == -1) return false;
+        int side = jumpNeighbour(previous, x - DX[dir], y, vertical);
+        return side == -1 || side == jumpTarget || jumpGrid.hasWall(side, dir);
+    }
+
+    /**
+     * Returns the neighbour of a cell if the jump point search may step onto
+     * it. Same as isAccessible, but works on the cell grid directly.
+     *
+     * @param index         Index of the cell to step from
+     * @param x             X coordinate of the cell
+     * @param y             Y coordinate of the cell
+     * @param dir           The direction to step to
+     * @return              Index of the accessible neighbour or -1
+     */
+    private int jumpNeighbour(int index, int x, int y, int dir) {
+        if (jumpGrid.hasWall(index, dir)) return -1;
+        x += DX[dir];
+        y += DY[dir];
+        if (x < 0 || y < 0 || x >= jumpWidth || y >= jumpHeight) return -1;
+
+        int neighbour = x*jumpHeight + y;
+        if (jumpGrid.unseenSinceDest.get(neighbour)) return -1;
+        if (neighbour == jumpTarget) return neighbour;
+        if (!jumpGrid.discovered.get(neighbour) || jumpGrid.getObstacle(neighbour) != 0) return -1;
+        if (jumpGrid.robot.get(neighbour)) {
+            robotInTheWay = true;
+            return -1;
+        }
+        return neighbour;
+    }
+
+    /**
+     * Returns true for the left and right directions
+     */
+    private static boolean isHorizontal(int dir) {
+        return dir == 1 || dir == 3;
+    }
+
+    /**
+     * Returns the direction of a straight move between two cells
+     *
+     * @param height        Height of the map
+     * @param from          Index of the first cell
+     * @param to            Index of the second cell
+     * @return              The direction leading from the first cell to the second one
+     */
+    private static int direction(int height, int from, int to) {
+        if (from / height == to / height) return to < from ? 0 : 2;
+        return to > from ? 1 : 3;
+    }
+
+    /**
+     * Find the shortest path to the nearest of the target cells with a single
+     * breadth-first sweep from the start cell. Obstacles and other robots are
+     * not passed, drones follow the same rules.
+     *
+     * @param start         The start cell to search from
+     * @param targetCells   The target cells to search to
+     * @return              A Path to the nearest reachable target or NULL
+     */
+    public Path searchNearest(Cell start, List<Cell> targetCells) {
+        if (targetCells.isEmpty()) return null;
+
+        reset(start.map.getWidth()*start.map.getHeight());
+
+        // Mark the targets in the target bitmap
+        for (int i = 0; i < targetCells.size(); i++) {
+            targetStamp[targetCells.get(i).getIndex()] = generation;
+        }
+
+        return sweep(start);
+    }
+
+    /**
+     * Find the shortest path to the nearest cell not yet discovered on the
+     * known map. Only the undiscovered neighbours of the known map's
+     * exploration frontier are marked as targets.
+     *
+     * @param start         The start cell to search from
+     * @param known         The map holding the discovered state
+     * @return              A Path to the nearest reachable unknown cell or NULL
+     */
+    public Path searchNearestUnknown(Cell start, Map known) {
+        if (known.getFrontierSize() == 0) return null;
+
+        reset(start.map.getWidth()*start.map.getHeight());
+
+        // Mark the undiscovered neighbours of the frontier in the target bitmap
+        for (int i = 0; i < known.getFrontierSize(); i++) {
+            Cell frontierCell = known.getFrontierCell(i);
+            for (int dir = 0; dir < 4; dir++) {
+                Cell neighbour = known.getCell(frontierCell.getX()+DX[dir], frontierCell.getY()+DY[dir]);
+                if (neighbour != null && !neighbour.isDiscovered()) {
+                    targetStamp[neighbour.getIndex()] = generation;
+                }
+            }
+        }
+
+        return sweep(start);
+    }
+
+    /**
+     * Find the shortest path to the nearest source of a distance field. The
+     * field is used as an exact heuristic, so without robots in the way only
+     * the cells along the path are expanded. Robots may make the field
+     * underestimate, so cells already on the open list are updated when a
+     * shorter path to them is found (stale heap entries are skipped).
+     *
+     * @param start         The start cell to search from
+     * @param field         Distance of the cells from the nearest source (-1 if unreachable)
+     * @return              A Path to the nearest reachable source or NULL
+     */
+    public Path searchDistanceField(Cell start, int[] field) {
+        int startIndex = start.getIndex();
+        if (field[startIndex] < 0) return null;
+
+        Map map = start.map;
+        int height = map.getHeight();
+        reset(map.getWidth()*height);
+        int nextOrder = 0;
+        open(startIndex, 0, -1, field[startIndex], nextOrder++);
+
+        while (heapSize > 0) {
+            int selectedF = heapF[0];
+            int selectedIndex = poll();
+            int selectedG = sumG[selectedIndex];
+            if (selectedF != selectedG + field[selectedIndex]) continue;
+            if (field[selectedIndex] == 0) {
+                return buildPath(map, selectedIndex);
+            }
+
+            Cell selectedCell = map.cells[selectedIndex / height][selectedIndex % height];
+            for (int dir = 0; dir < 4; dir++) {
+                Cell possibleNeighbour = selectedCell.getAccessibleNeigbour(dir);
+                if (possibleNeighbour == null) continue;
+                int neighbourIndex = possibleNeighbour.getIndex();
+                if (field[neighbourIndex] < 0) continue;
+                if (stamp[neighbourIndex] == generation && sumG[neighbourIndex] <= selectedG+1) continue;
+                if (!isAccessible(possibleNeighbour, field[neighbourIndex] == 0, false)) {
+                    robotInTheWay |= possibleNeighbour.hasRobot();
+                    continue;
+                }
+
+                open(neighbourIndex, selectedG+1, selectedIndex, field[neighbourIndex], nextOrder++);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Breadth-first sweep from the start cell until a cell marked in the
+     * target bitmap of the current generation is reached
+     *
+     * @param start         The start cell to search from
+     * @return              A Path to the nearest reachable target or NULL
+     */
+    private Path sweep(Cell start) {
+        Map map = start.map;
+        int height = map.getHeight();
+
+        // The heap array is used as a plain FIFO queue here
+        int head = 0, tail = 0;
+        int startIndex = start.getIndex();
+        stamp[startIndex] = generation;
+        parent[startIndex] = -1;
+        heapCell[tail++] = startIndex;
+
+        while (head < tail) {
+            int selectedIndex = heapCell[head++];
+            if (targetStamp[selectedIndex] == generation) {
+                return buildPath(map, selectedIndex);
+            }
+
+            Cell selectedCell = map.cells[selectedIndex / height][selectedIndex % height];
+            for (int dir = 0; dir < 4; dir++) {
+                Cell possibleNeighbour = selectedCell.getAccessibleNeigbour(dir);
+                if (possibleNeighbour == null) continue;
+                int neighbourIndex = possibleNeighbour.getIndex();
+                if (stamp[neighbourIndex] == generation) continue;
+                if (!isAccessible(possibleNeighbour, targetStamp[neighbourIndex] == generation, false)) {
+                    robotInTheWay |= possibleNeighbour.hasRobot();
+                    continue;
+                }
+
+                stamp[neighbourIndex] = generation;
+                parent[neighbourIndex] = selectedIndex;
+                heapCell[tail++] = neighbourIndex;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns true if the search may step onto the cell. Targets may be
+     * undiscovered or occupied, every other cell on the path must be free.
+     *
+     * @param cell          The cell to check
+     * @param isTarget      True if the cell is a target of the search
+     * @param isPathForDrone True to ignore obstacles and other robots
+     * @return              True if the cell can be added to the search
+     */
+    static boolean isAccessible(Cell cell, boolean isTarget, boolean isPathForDrone) {
+        if (!(cell.isDiscovered() || isTarget) || !cell.isSeenSinceDest()) return false;
+        if (isTarget || isPathForDrone) return true;
+        return !cell.hasObstacle() && !cell.hasRobot();
+    }
+
+    /**
+     * Start a new search generation, growing the arrays if the grid is larger
+     * than any seen before
+     *
+     * @param gridSize      Number of cells on the map
+     */
+    private void reset(int gridSize) {
+        if (stamp.length < gridSize) {
+            stamp = new int[gridSize];
+            targetStamp = new int[gridSize];
+            sumG = new int[gridSize];
+            parent = new int[gridSize];
+            heapCell = new int[gridSize];
+            heapF = new int[gridSize];
+            heapOrder = new int[gridSize];
+            generation = 0;
+        }
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            // Stamps would wrap around: clear them once
+            Arrays.fill(stamp, 0);
+            Arrays.fill(targetStamp, 0);
+            generation = 1;
+        }
+        heapSize = 0;
+        robotInTheWay = false;
+    }
+
+    /**
+     * Put a cell on the open list
+     *
+     * @param index         Index of the cell
+     * @param g             Path length to the cell
+     * @param parentIndex   Index of the parent cell
+     * @param h             Heuristics value of the cell
+     * @param order         Insertion order of the cell
+     */
+    private void open(int index, int g, int parentIndex, int h, int order) {
+        stamp[index] = generation;
+        sumG[index] = g;
+        parent[index] = parentIndex;
+
+        // Sift up
+        if (heapSize == heapCell.length) growHeap();
+        int f = g + h;
+        int pos = heapSize++;
+        while (pos > 0) {
+            int up = (pos - 1) >> 1;
+            if (!less(f, order, heapF[up], heapOrder[up])) break;
+            heapCell[pos] = heapCell[up];
+            heapF[pos] = heapF[up];
+            heapOrder[pos] = heapOrder[up];
+            pos = up;
+        }
+        heapCell[pos] = index;
+        heapF[pos] = f;
+        heapOrder[pos] = order;
+    }
+
+    /**
+     * Double the capacity of the open list (needed only when cells are
+     * put on the open list more than once)
+     */
+    private void growHeap() {
+        int capacity = Math.max(16, heapCell.length * 2);
+        heapCell = Arrays.copyOf(heapCell, capacity);
+        heapF = Arrays.copyOf(heapF, capacity);
+        heapOrder = Arrays.copyOf(heapOrder, capacity);
+    }
+
+    /**
+     * Remove the cell with the lowest F value from the open list
+     *
+     * @return              Index of the removed cell
+     */
+    private int poll() {
+        int result = heapCell[0];
+        heapSize--;
+        if (heapSize > 0) {
+            // Sift the last node down from the root
+            int cell = heapCell[heapSize];
+            int f = heapF[heapSize];
+            int order = heapOrder[heapSize];
+            int pos = 0;
+            while (true) {
+                int child = 2 * pos + 1;
+                if (child >= heapSize) break;
+                if (child + 1 < heapSize && less(heapF[child+1], heapOrder[child+1], heapF[child], heapOrder[child])) child++;
+                if (!less(heapF[child], heapOrder[child], f, order)) break;
+                heapCell[pos] = heapCell[child];
+                heapF[pos] = heapF[child];
+                heapOrder[pos] = heapOrder[child];
+                pos = child;
+            }
+            heapCell[pos] = cell;
+            heapF[pos] = f;
+            heapOrder[pos] = order;
+        }
+        return result;
+    }
+
+    /**
+     * Compare two open list entries by F, then by insertion order
+     */
+    private static boolean less(int f1, int order1, int f2, int order2) {
+        return f1 < f2 || (f1 == f2 && order1 < order2);
+    }
+
+    /**
+     * Build the path from the start cell to the cell specified
+     *
+     * @param map           The map the search was run on
+     * @param index         Index of the last cell of the path
+     * @return              The path leading to the cell
+     */
+    private Path buildPath(Map map, int index) {
+        int height = map.getHeight();
+        Path result = new Path();
+        while (index != -1) {
+            result.addLastCell(map.cells[index / height][index % height]);
+            index = parent[index];
+        }
+        Collections.reverse(result.getPath());
+        result.setAroundRobots(robotInTheWay);
+        return result;
+    }
+
+    /**
+     * Build the path from the start cell to the cell specified, adding the
+     * cells of the straight runs between the jump points
+     *
+     * @param map           The map the search was run on
+     * @param index         Index of the last cell of the path
+     * @return              The path leading to the cell
+     */
+    private Path buildJumpPath(Map map, int index) {
+        int height = map.getHeight();
+        Path result = new Path();
+        while (index != -1) {
+            int parentIndex = parent[index];
+            result.addLastCell(map.cells[index / height][index % height]);
+            if (parentIndex != -1) {
+                int x = index / height, y = index % height;
+                int dx = Integer.signum(parentIndex / height - x), dy = Integer.signum(parentIndex % height - y);
+                for (x += dx, y += dy; x != parentIndex / height || y != parentIndex % height; x += dx, y += dy) {
+                    result.addLastCell(map.cells[x][y]);
+                }
+            }
+            index = parentIndex;
+        }
+        Collections.reverse(result.getPath());
+        result.setAroundRobots(robotInTheWay);
+        return result;
+    }
+
+    /**
+     * Calculate heuristics value between two cells
+     *
+     * @param c1        The first cell
+     * @param c2        The second cell
+     * @return          The heuristics value between the two cells
+     */
+    private static int heuristics(Cell c1, Cell c2) {
+        return Math.abs(c1.getX()-c2.getX())+Math.abs(c1.getY()-c2.getY());
+    }
+}
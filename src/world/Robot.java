@@ -1,5 +1,7 @@
 package world;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import interfaces.InjuredInfo;
 import interfaces.RobotInterface;
 import rescueframework.AbstractRobotControl;
@@ -19,8 +21,8 @@ public abstract class Robot implements RobotInterface{
     /** ID of the robot instance */
     protected int instanceId;
 
-    /** next available robot ID */
-    static int nextInstanceID = 0;
+    /** next available robot ID (shared by the simulations running in parallel) */
+    static AtomicInteger nextInstanceID = new AtomicInteger(0);
 	
     /** Location of the robot */
     private Cell location;
@@ -44,7 +46,7 @@ public abstract class Robot implements RobotInterface{
 	
 	protected Type type = Type.ROBOT;
     /** Static ID value of the next injured */
-    private static int nextID = 1;
+    private static AtomicInteger nextID = new AtomicInteger(1);
     /** ID of the injured object */
     public int id;
 
@@ -59,9 +61,8 @@ public abstract class Robot implements RobotInterface{
         startCell.discover();
         this.control = null;
         this.name = type.name(); // set the default name based on the type
-        instanceId = nextInstanceID++;
-        id=nextID;
-        nextID++;
+        instanceId = nextInstanceID.getAndIncrement();
+        id=nextID.getAndIncrement();
     }
 
     /**
@@ -199,6 +200,7 @@ public abstract class Robot implements RobotInterface{
 
     public void decreaseBatteryLifeTime(int val) {
         batteryLifeTime -= val;
+        location.map.getContext().consumeEnergy(val);
     }
 
     public Type getType() {
@@ -235,5 +237,24 @@ public abstract class Robot implements RobotInterface{
     public void resetWait() {
     	waited=0;
     }
+
+    /**
+     * Overwrite the state changed by the simulation steps
+     *
+     * @param location          The cell of the robot
+     * @param batteryLifeTime   The remaining battery life time
+     * @param injured           The carried injured or null
+     * @param medicine          The remaining medicine
+     * @param visibilityRange   The visibility range (-1 if the robot is out of energy)
+     * @param waited            The time the robot waited in place
+     */
+    void restore(Cell location, int batteryLifeTime, Injured injured, int medicine, int visibilityRange, int waited) {
+        this.location = location;
+        this.batteryLifeTime = batteryLifeTime;
+        this.injured = injured;
+        this.medicine = medicine;
+        this.visibilityRange = visibilityRange;
+        this.waited = waited;
+    }
     
 }
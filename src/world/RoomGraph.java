@@ -0,0 +1,561 @@
+package world;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Graph of the rooms and the doors between them for long distance planning.
+ * The nodes are the portals (door and exit cells) and the edges connect the
+ * portals of the same room with their distance through the room. The edges
+ * of a portal are calculated by a breadth-first search in the room when they
+ * are first needed and kept until a cell of the room changes, so a query
+ * searches the small portal graph and the grid only in the changed rooms.
+ *
+ * Only the map loaded from file is segmented: its walls change only when
+ * they are destroyed, which merges the rooms on the two sides without
+ * building the graph again. The discovery of the cells and the robots are
+ * taken into account in the searches, a robot moving changes its room like
+ * a newly discovered cell.
+ */
+class RoomGraph {
+	/** The map of the graph */
+	private final Map map;
+	/** Rooms of the map */
+	private final RoomSegmentation rooms;
+
+	/** Cell indices of the portals in increasing order */
+	private final int[] portals;
+	/** Rooms next to the portals, four slots per portal (-1 if unused) */
+	private final int[] portalRooms;
+	/** Version of the rooms, incremented when a cell of the room changes */
+	private final int[] roomVersions;
+	/** Edges of the portal slots: pairs of target portal and distance */
+	private final int[][] edges;
+	/** Room version the edges of the portal slots were calculated at */
+	private final int[] edgeVersions;
+
+	/** Generation of the room search, stamped on the visited cells */
+	private int cellGeneration = 0;
+	/** Generation in which the cell was visited, indexed by x*height+y */
+	private final int[] cellStamp;
+	/** Queue of the room search */
+	private int[] queue = new int[64];
+	/** Portals reached by the last room search: pairs of portal and distance */
+	private int[] found = new int[16];
+	/** Number of ints used in found */
+	private int foundLength = 0;
+
+	/** Generation of the portal search */
+	private int portalGeneration = 0;
+	/** Generation in which the portal was reached */
+	private final int[] portalStamp;
+	/** Generation in which the portal was marked as a target */
+	private final int[] targetStamp;
+	/** Distance of the portals from the start */
+	private final int[] portalDistance;
+	/** Previous portal on the route (-1 for the start) */
+	private final int[] portalParent;
+	/** Binary heap of the portal search: distance in the high, portal in the low half */
+	private long[] heap = new long[64];
+	/** Number of entries in the heap */
+	private int heapSize = 0;
+	/** True if the last search skipped a portal because of a robot */
+	private boolean robotInTheWay = false;
+
+	/**
+	 * Route found on the portal graph
+	 */
+	static class Route {
+		/** The start cell, the portals passed and the target */
+		final Cell[] waypoints;
+		/** Distance of the waypoints from the start */
+		final int[] distances;
+		/** True if a portal was skipped because of a robot */
+		final boolean aroundRobots;
+
+		private Route(Cell[] waypoints, int[] distances, boolean aroundRobots) {
+			this.waypoints = waypoints;
+			this.distances = distances;
+			this.aroundRobots = aroundRobots;
+		}
+
+		/**
+		 * Returns the length of the route
+		 *
+		 * @return The number of steps from the start to the target
+		 */
+		int getLength() {
+			return distances[distances.length - 1];
+		}
+
+		/**
+		 * Build the grid path of the route with a search between every two
+		 * waypoints. The route already avoids the robots, so the legs keep
+		 * its length unless the map changed since the search: null is
+		 * returned in that case.
+		 *
+		 * @param planner
+		 *            The planner to search the legs with
+		 * @return The path along the route or null if it can not be followed
+		 */
+		Path refine(PathPlanner planner) {
+			Path result = new Path();
+			result.setAroundRobots(aroundRobots);
+			result.addLastCell(waypoints[0]);
+			for (int i = 1; i < waypoints.length; i++) {
+				// Waypoints passed through must be free
+				if (i < waypoints.length - 1 && !PathPlanner.isAccessible(waypoints[i], false, false))
+					return null;
+
+				int length = distances[i] - distances[i - 1];
+				Path leg = planner.search(waypoints[i - 1], waypoints[i], length);
+				if (leg == null || leg.getLength() != length + 1)
+					return null;
+				List<?> cells = leg.getPath();
+				for (int j = 1; j < cells.size(); j++)
+					result.addLastCell((Cell) cells.get(j));
+				if (leg.isAroundRobots())
+					result.setAroundRobots(true);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Build the graph of the current rooms of a map, the edges are calculated
+	 * later on demand
+	 *
+	 * @param map
+	 *            The map of the graph
+	 */
+	RoomGraph(Map map) {
+		this.map = map;
+		rooms = map.getRooms();
+		int size = map.getWidth() * map.getHeight();
+		cellStamp = new int[size];
+
+		int count = 0;
+		for (int index = 0; index < size; index++) {
+			if (rooms.getRoom(index) == RoomSegmentation.PORTAL)
+				count++;
+		}
+		portals = new int[count];
+		count = 0;
+		for (int index = 0; index < size; index++) {
+			if (rooms.getRoom(index) == RoomSegmentation.PORTAL)
+				portals[count++] = index;
+		}
+
+		// Rooms entered from the portals
+		portalRooms = new int[count * 4];
+		Arrays.fill(portalRooms, -1);
+		for (int portal = 0; portal < count; portal++) {
+			Cell cell = map.getCell(portals[portal]);
+			int slots = 0;
+			for (int direction = 0; direction < 4; direction++) {
+				Cell neighbour = cell.getAccessibleNeigbourEx(direction);
+				if (neighbour == null)
+					continue;
+				int room = rooms.getRoom(neighbour.getIndex());
+				if (room == RoomSegmentation.PORTAL)
+					continue;
+
+				boolean known = false;
+				for (int slot = 0; slot < slots; slot++)
+					known |= portalRooms[portal * 4 + slot] == room;
+				if (!known)
+					portalRooms[portal * 4 + slots++] = room;
+			}
+		}
+
+		roomVersions = new int[rooms.getRoomCount()];
+		edges = new int[count * 4][];
+		edgeVersions = new int[count * 4];
+		portalStamp = new int[count];
+		targetStamp = new int[count];
+		portalDistance = new int[count];
+		portalParent = new int[count];
+	}
+
+	/**
+	 * Returns the layout version of the map the graph was built at
+	 *
+	 * @return The layout version
+	 */
+	long getLayoutVersion() {
+		return rooms.getLayoutVersion();
+	}
+
+	/**
+	 * Drop the cached edges of the room of a changed cell. Changed portals
+	 * need no update, they are checked when the route passes them.
+	 *
+	 * @param index
+	 *            The x*height+y index of the changed cell
+	 */
+	void cellChanged(int index) {
+		if (rooms.getLayoutVersion() != map.getLayoutVersion())
+			return;
+		int room = rooms.getRoom(index);
+		if (room != RoomSegmentation.PORTAL)
+			roomVersions[room]++;
+	}
+
+	/**
+	 * Update the graph after the wall between two neighbour cells was
+	 * destroyed: the rooms on the two sides are merged, or a portal gets the
+	 * room it was opened to. Portals next to each other need no update, they
+	 * are connected in the searches.
+	 *
+	 * @param index
+	 *            The x*height+y index of the cell whose wall was destroyed
+	 * @param neighbourIndex
+	 *            The x*height+y index of the cell behind the wall
+	 */
+	void wallRemoved(int index, int neighbourIndex) {
+		int room = rooms.getRoom(index);
+		int neighbourRoom = rooms.getRoom(neighbourIndex);
+		if (room == RoomSegmentation.PORTAL && neighbourRoom == RoomSegmentation.PORTAL)
+			return;
+
+		if (room == RoomSegmentation.PORTAL) {
+			addPortalRoom(getPortal(index), neighbourRoom);
+			room = neighbourRoom;
+		} else if (neighbourRoom == RoomSegmentation.PORTAL) {
+			addPortalRoom(getPortal(neighbourIndex), room);
+		} else if (room != neighbourRoom) {
+			rooms.merge(map, neighbourIndex, room);
+			// The portals of the merged room lead into the room it was merged into
+			for (int portal = 0; portal < portals.length; portal++) {
+				for (int slot = portal * 4; slot < portal * 4 + 4 && portalRooms[slot] != -1; slot++) {
+					if (portalRooms[slot] != neighbourRoom)
+						continue;
+					if (hasRoom(portal, room)) {
+						removeSlot(slot);
+						slot--;
+					} else {
+						portalRooms[slot] = room;
+						edges[slot] = null;
+					}
+				}
+			}
+		}
+		roomVersions[room]++;
+	}
+
+	/**
+	 * Returns true if a portal leads into a room
+	 */
+	private boolean hasRoom(int portal, int room) {
+		for (int slot = portal * 4; slot < portal * 4 + 4 && portalRooms[slot] != -1; slot++) {
+			if (portalRooms[slot] == room)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Add a room to the free slot of a portal if the portal does not lead
+	 * into it yet
+	 */
+	private void addPortalRoom(int portal, int room) {
+		if (hasRoom(portal, room))
+			return;
+		for (int slot = portal * 4; slot < portal * 4 + 4; slot++) {
+			if (portalRooms[slot] == -1) {
+				portalRooms[slot] = room;
+				edges[slot] = null;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Remove a slot of a portal, moving the following slots of the portal
+	 * down
+	 */
+	private void removeSlot(int slot) {
+		int end = slot - slot % 4 + 3;
+		for (int i = slot; i < end; i++) {
+			portalRooms[i] = portalRooms[i + 1];
+			edges[i] = edges[i + 1];
+			edgeVersions[i] = edgeVersions[i + 1];
+		}
+		portalRooms[end] = -1;
+		edges[end] = null;
+	}
+
+	/**
+	 * Find the route to the nearest target portal. The route only leads
+	 * through discovered cells without obstacles and robots.
+	 *
+	 * @param start
+	 *            The start cell on the map of the graph
+	 * @param targets
+	 *            The target portals (exits) on the map of the graph
+	 * @return The shortest route to the nearest target or null if no target
+	 *         is reachable
+	 */
+	Route searchNearest(Cell start, List<Cell> targets) {
+		nextPortalGeneration();
+		robotInTheWay = false;
+		for (Cell target : targets) {
+			int portal = getPortal(target.getIndex());
+			if (portal >= 0)
+				targetStamp[portal] = portalGeneration;
+		}
+
+		// Distances of the portals of the start room (or of the start portal)
+		int startPortal = getPortal(start.getIndex());
+		if (startPortal >= 0) {
+			reach(startPortal, 0, -1);
+		} else {
+			searchRoom(start.getIndex(), rooms.getRoom(start.getIndex()));
+			for (int i = 0; i < foundLength; i += 2)
+				reach(found[i], found[i + 1], -1);
+		}
+
+		while (heapSize > 0) {
+			long entry = poll();
+			int portal = (int) entry;
+			int distance = (int) (entry >>> 32);
+			if (distance != portalDistance[portal])
+				continue;
+			if (targetStamp[portal] == portalGeneration)
+				return buildRoute(start, portal);
+
+			// Paths may only lead through free cells
+			Cell cell = map.getCell(portals[portal]);
+			if (portal != startPortal && !isFree(cell)) {
+				robotInTheWay |= cell.hasRobot();
+				continue;
+			}
+
+			for (int direction = 0; direction < 4; direction++) {
+				Cell neighbour = cell.getAccessibleNeigbourEx(direction);
+				if (neighbour != null && rooms.getRoom(neighbour.getIndex()) == RoomSegmentation.PORTAL)
+					reach(getPortal(neighbour.getIndex()), distance + 1, portal);
+			}
+			for (int slot = portal * 4; slot < portal * 4 + 4 && portalRooms[slot] != -1; slot++) {
+				int[] slotEdges = getEdges(portal, slot);
+				for (int i = 0; i < slotEdges.length; i += 2)
+					reach(slotEdges[i], distance + slotEdges[i + 1], portal);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the edges of a portal into one of its rooms, searching the room
+	 * again if a cell of it changed since the last search
+	 *
+	 * @param portal
+	 *            The portal
+	 * @param slot
+	 *            The slot of the room in portalRooms
+	 * @return Pairs of target portal and distance
+	 */
+	private int[] getEdges(int portal, int slot) {
+		int room = portalRooms[slot];
+		if (edges[slot] == null || edgeVersions[slot] != roomVersions[room]) {
+			searchRoom(portals[portal], room);
+			edges[slot] = Arrays.copyOf(found, foundLength);
+			edgeVersions[slot] = roomVersions[room];
+		}
+		return edges[slot];
+	}
+
+	/**
+	 * Breadth-first search from a cell through the free cells of a room. The
+	 * portals reached and their distances are put into found.
+	 *
+	 * @param source
+	 *            Index of the start cell (a portal or a cell of the room)
+	 * @param room
+	 *            The room to search
+	 */
+	private void searchRoom(int source, int room) {
+		cellGeneration++;
+		if (cellGeneration == Integer.MAX_VALUE) {
+			// Stamps would wrap around: clear them once
+			Arrays.fill(cellStamp, 0);
+			cellGeneration = 1;
+		}
+		foundLength = 0;
+
+		int length = 0;
+		queue[length++] = source;
+		cellStamp[source] = cellGeneration;
+		boolean fromPortal = rooms.getRoom(source) == RoomSegmentation.PORTAL;
+		int distance = 0;
+		int levelEnd = 1;
+		for (int i = 0; i < length; i++) {
+			if (i == levelEnd) {
+				distance++;
+				levelEnd = length;
+			}
+			int index = queue[i];
+			Cell cell = map.getCell(index);
+			if (i > 0) {
+				// Portals end the search, other cells are passed if free
+				if (rooms.getRoom(index) == RoomSegmentation.PORTAL) {
+					addFound(getPortal(index), distance);
+					continue;
+				}
+				if (!isFree(cell))
+					continue;
+			}
+
+			for (int direction = 0; direction < 4; direction++) {
+				Cell neighbour = cell.getAccessibleNeigbourEx(direction);
+				if (neighbour == null || cellStamp[neighbour.getIndex()] == cellGeneration)
+					continue;
+				// Neighbour portals of the source portal are connected directly
+				int neighbourRoom = rooms.getRoom(neighbour.getIndex());
+				if (neighbourRoom != room && ((i == 0 && fromPortal) || neighbourRoom != RoomSegmentation.PORTAL))
+					continue;
+
+				cellStamp[neighbour.getIndex()] = cellGeneration;
+				if (length == queue.length)
+					queue = Arrays.copyOf(queue, length * 2);
+				queue[length++] = neighbour.getIndex();
+			}
+		}
+	}
+
+	/**
+	 * Add a portal and its distance to found
+	 */
+	private void addFound(int portal, int distance) {
+		if (foundLength == found.length)
+			found = Arrays.copyOf(found, foundLength * 2);
+		found[foundLength++] = portal;
+		found[foundLength++] = distance;
+	}
+
+	/**
+	 * Returns true if paths may lead through the cell: it is discovered,
+	 * seen since its wall was destroyed and has no obstacle or robot
+	 *
+	 * @param cell
+	 *            The cell to check
+	 * @return True for free cells
+	 */
+	private static boolean isFree(Cell cell) {
+		return cell.isDiscovered() && cell.isSeenSinceDest() && !cell.hasObstacleEx() && !cell.hasRobot();
+	}
+
+	/**
+	 * Returns the portal of a cell
+	 *
+	 * @param index
+	 *            The x*height+y index of the cell
+	 * @return The portal or a negative number if the cell is not a portal
+	 */
+	private int getPortal(int index) {
+		return Arrays.binarySearch(portals, index);
+	}
+
+	/**
+	 * Start a new portal search
+	 */
+	private void nextPortalGeneration() {
+		portalGeneration++;
+		if (portalGeneration == Integer.MAX_VALUE) {
+			// Stamps would wrap around: clear them once
+			Arrays.fill(portalStamp, 0);
+			Arrays.fill(targetStamp, 0);
+			portalGeneration = 1;
+		}
+		heapSize = 0;
+	}
+
+	/**
+	 * Update the distance of a portal if it is reached on a shorter route
+	 *
+	 * @param portal
+	 *            The portal reached
+	 * @param distance
+	 *            Distance of the portal from the start on the route
+	 * @param parent
+	 *            The previous portal on the route (-1 for the start)
+	 */
+	private void reach(int portal, int distance, int parent) {
+		if (portalStamp[portal] == portalGeneration && portalDistance[portal] <= distance)
+			return;
+		portalStamp[portal] = portalGeneration;
+		portalDistance[portal] = distance;
+		portalParent[portal] = parent;
+
+		// Sift up
+		if (heapSize == heap.length)
+			heap = Arrays.copyOf(heap, heapSize * 2);
+		long entry = ((long) distance << 32) | portal;
+		int position = heapSize++;
+		while (position > 0) {
+			int up = (position - 1) >> 1;
+			if (heap[up] <= entry)
+				break;
+			heap[position] = heap[up];
+			position = up;
+		}
+		heap[position] = entry;
+	}
+
+	/**
+	 * Remove the entry with the lowest distance from the heap
+	 *
+	 * @return The removed entry
+	 */
+	private long poll() {
+		long result = heap[0];
+		heapSize--;
+		if (heapSize > 0) {
+			// Sift the last entry down from the root
+			long entry = heap[heapSize];
+			int position = 0;
+			while (true) {
+				int child = 2 * position + 1;
+				if (child >= heapSize)
+					break;
+				if (child + 1 < heapSize && heap[child + 1] < heap[child])
+					child++;
+				if (heap[child] >= entry)
+					break;
+				heap[position] = heap[child];
+				position = child;
+			}
+			heap[position] = entry;
+		}
+		return result;
+	}
+
+	/**
+	 * Build the route from the start to a portal
+	 *
+	 * @param start
+	 *            The start cell
+	 * @param portal
+	 *            The last portal of the route
+	 * @return The route
+	 */
+	private Route buildRoute(Cell start, int portal) {
+		int count = 1;
+		for (int current = portal; current != -1; current = portalParent[current])
+			count++;
+
+		// The start cell is a waypoint even if it is a portal, its distance is 0 then
+		Cell[] waypoints = new Cell[count];
+		int[] distances = new int[count];
+		for (int current = portal, i = count - 1; current != -1; current = portalParent[current], i--) {
+			waypoints[i] = map.getCell(portals[current]);
+			distances[i] = portalDistance[current];
+		}
+		waypoints[0] = start;
+		if (count > 1 && distances[1] == 0) {
+			waypoints = Arrays.copyOfRange(waypoints, 1, count);
+			distances = Arrays.copyOfRange(distances, 1, count);
+		}
+		return new Route(waypoints, distances, robotInTheWay);
+	}
+}
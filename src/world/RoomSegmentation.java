@@ -0,0 +1,139 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * Rooms of a map: the connected areas of accessible cells separated by doors
+ * and exits. All cells are labeled in one sweep over the grid, every cell is
+ * visited once. A destroyed wall only labels the cells of one room again.
+ */
+class RoomSegmentation {
+	/** Room id of the door and exit cells */
+	static final int PORTAL = -1;
+
+	/** Room id of the cells indexed by x*height+y */
+	private final int[] roomIds;
+	/** Number of rooms */
+	private final int roomCount;
+	/** Layout version of the map at the segmentation */
+	private final long layoutVersion;
+
+	/**
+	 * Label the rooms of a map
+	 *
+	 * @param map
+	 *            The map to segment
+	 */
+	RoomSegmentation(Map map) {
+		int size = map.getWidth() * map.getHeight();
+		roomIds = new int[size];
+		layoutVersion = map.getLayoutVersion();
+
+		// -2 marks the cells not labeled yet
+		Arrays.fill(roomIds, -2);
+		int[] queue = new int[64];
+		int rooms = 0;
+		for (int start = 0; start < size; start++) {
+			if (roomIds[start] != -2)
+				continue;
+			Cell cell = map.getCell(start);
+			if (isPortal(cell)) {
+				roomIds[start] = PORTAL;
+				continue;
+			}
+
+			// Flood the new room from its first cell
+			int room = rooms++;
+			int length = 0;
+			queue[length++] = start;
+			roomIds[start] = room;
+			for (int i = 0; i < length; i++) {
+				Cell current = map.getCell(queue[i]);
+				for (int direction = 0; direction < 4; direction++) {
+					Cell neighbour = current.getAccessibleNeigbourEx(direction);
+					if (neighbour == null || roomIds[neighbour.getIndex()] != -2 || isPortal(neighbour))
+						continue;
+
+					roomIds[neighbour.getIndex()] = room;
+					if (length == queue.length)
+						queue = Arrays.copyOf(queue, length * 2);
+					queue[length++] = neighbour.getIndex();
+				}
+			}
+		}
+		roomCount = rooms;
+	}
+
+	/**
+	 * Merge a room into an other one when a wall between them is destroyed.
+	 * Only the cells of the merged room are labeled again.
+	 *
+	 * @param map
+	 *            The map of the rooms
+	 * @param start
+	 *            Index of a cell of the merged room
+	 * @param into
+	 *            The room it is merged into
+	 */
+	void merge(Map map, int start, int into) {
+		int room = roomIds[start];
+		int[] queue = new int[64];
+		int length = 0;
+		queue[length++] = start;
+		roomIds[start] = into;
+		for (int i = 0; i < length; i++) {
+			Cell current = map.getCell(queue[i]);
+			// The cells of a room are neighbours, the walls between them do not matter here
+			for (int direction = 0; direction < 4; direction++) {
+				Cell neighbour = current.getLayoutNeighbour(direction);
+				if (neighbour == null || roomIds[neighbour.getIndex()] != room)
+					continue;
+
+				roomIds[neighbour.getIndex()] = into;
+				if (length == queue.length)
+					queue = Arrays.copyOf(queue, length * 2);
+				queue[length++] = neighbour.getIndex();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the cell separates rooms (door or exit)
+	 *
+	 * @param cell
+	 *            The cell to check
+	 * @return True for door and exit cells
+	 */
+	static boolean isPortal(Cell cell) {
+		return cell.isDoor() || cell.isExit();
+	}
+
+	/**
+	 * Returns the room of a cell
+	 *
+	 * @param index
+	 *            The x*height+y index of the cell
+	 * @return The room id or PORTAL for doors and exits
+	 */
+	int getRoom(int index) {
+		return roomIds[index];
+	}
+
+	/**
+	 * Returns the number of rooms
+	 *
+	 * @return The number of rooms, room ids are 0..count-1
+	 */
+	int getRoomCount() {
+		return roomCount;
+	}
+
+	/**
+	 * Returns the layout version of the map the rooms were labeled at
+	 *
+	 * @return The layout version
+	 */
+	long getLayoutVersion() {
+		return layoutVersion;
+	}
+}
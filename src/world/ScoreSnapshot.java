@@ -0,0 +1,120 @@
+package world;
+
+import rescueframework.MainFrame;
+
+/**
+ * Immutable state of the score at a given time of the simulation
+ */
+public final class ScoreSnapshot {
+    /** Simulation time */
+    private final int time;
+    /** Number of injureds on the map */
+    private final int totalInjured;
+    /** Number of injureds transported outside alive */
+    private final int aliveOutside;
+    /** Number of injureds transported outside dead */
+    private final int deadOutside;
+    /** Score of the transported injureds */
+    private final int rescueScore;
+    /** Cost of the robots */
+    private final int robotCost;
+    /** Energy used by the robots */
+    private final int consumedEnergy;
+    /** Final score */
+    private final int finalScore;
+    /** Status of the simulation */
+    private final MainFrame.SimulationStatus status;
+
+    /**
+     * Default constructor
+     *
+     * @param time              Simulation time
+     * @param totalInjured      Number of injureds on the map
+     * @param aliveOutside      Number of injureds transported outside alive
+     * @param deadOutside       Number of injureds transported outside dead
+     * @param rescueScore       Score of the transported injureds
+     * @param robotCost         Cost of the robots
+     * @param consumedEnergy    Energy used by the robots
+     * @param status            Status of the simulation
+     */
+    public ScoreSnapshot(int time, int totalInjured, int aliveOutside, int deadOutside, int rescueScore,
+            int robotCost, int consumedEnergy, MainFrame.SimulationStatus status) {
+        this.time = time;
+        this.totalInjured = totalInjured;
+        this.aliveOutside = aliveOutside;
+        this.deadOutside = deadOutside;
+        this.rescueScore = rescueScore;
+        this.robotCost = robotCost;
+        this.consumedEnergy = consumedEnergy;
+        this.finalScore = rescueScore - robotCost - consumedEnergy - time;
+        this.status = status;
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    public int getTotalInjured() {
+        return totalInjured;
+    }
+
+    public int getInjuredInside() {
+        return totalInjured - aliveOutside - deadOutside;
+    }
+
+    public int getAliveOutside() {
+        return aliveOutside;
+    }
+
+    public int getDeadOutside() {
+        return deadOutside;
+    }
+
+    public int getRescueScore() {
+        return rescueScore;
+    }
+
+    public int getRobotCost() {
+        return robotCost;
+    }
+
+    public int getConsumedEnergy() {
+        return consumedEnergy;
+    }
+
+    public int getFinalScore() {
+        return finalScore;
+    }
+
+    public MainFrame.SimulationStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ScoreSnapshot)) return false;
+        ScoreSnapshot other = (ScoreSnapshot) o;
+        return time == other.time && totalInjured == other.totalInjured && aliveOutside == other.aliveOutside
+                && deadOutside == other.deadOutside && rescueScore == other.rescueScore
+                && robotCost == other.robotCost && consumedEnergy == other.consumedEnergy
+                && status == other.status;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((time * 31 + aliveOutside) * 31 + deadOutside) * 31 + consumedEnergy;
+    }
+
+    /**
+     * Format the score for display
+     *
+     * @return  The score as displayed on the GUI
+     */
+    @Override
+    public String toString() {
+        return "Time: " + time + " | " + totalInjured + " injured (inside: " + getInjuredInside() + ", outside: "
+                + aliveOutside + " alive, " + deadOutside + " dead)  = " + rescueScore + "  |  robot cost: "
+                + robotCost + "  |  Energy: " + consumedEnergy + " used  |  Score: " + finalScore
+                + "  |  Simulation " + status;
+    }
+}
@@ -2,7 +2,6 @@ package world;
 
 import interfaces.RobotPerception;
 import rescueagents.StaticSensorControl;
-import rescueframework.MainFrame;
 
 public class StaticSensor extends Robot {
 
@@ -16,7 +15,7 @@ public class StaticSensor extends Robot {
 		
 		type = Type.SENSOR;
 		
-		batteryLifeTime = (Injured.MAXHEALTH / 4) + (MainFrame.nextRandInt(200) - 100); //250 + random between [-100, 100[
+		batteryLifeTime = (Injured.MAXHEALTH / 4) + (startCell.map.getContext().getAgentRandom().nextInt(200) - 100); //250 + random between [-100, 100[
 	}
 
 	@Override
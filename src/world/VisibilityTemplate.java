@@ -0,0 +1,276 @@
+package world;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed line of sight checks for a fixed visibility range.
+ *
+ * For every cell offset in the range the template stores the wall tests the
+ * line between the two cell centers has to pass, relative to the robot.
+ * A test (clause) consists of one or two walls and blocks the view if all of
+ * its walls exist. Evaluating a template needs integer lookups only and gives
+ * the same result as Map.checkCellVisibility.
+ *
+ * Lines crossing a horizontal wall exactly at a cell corner are the exception:
+ * there the original check depends on the floating point rounding at the
+ * actual map position, so these offsets are still checked by the map.
+ */
+public class VisibilityTemplate {
+    /** Templates already built, by visibility range */
+    private static final ConcurrentHashMap<Integer, VisibilityTemplate> templates = new ConcurrentHashMap<>();
+
+    /** The visibility range of the template */
+    private final int range;
+    /** Number of offsets in the range */
+    private int size = 0;
+    /** X offsets of the cells in the range (in x-major, y-minor order) */
+    private int[] offsetX;
+    /** Y offsets of the cells in the range */
+    private int[] offsetY;
+    /** Offsets that have to be checked by Map.checkCellVisibility */
+    private boolean[] exact;
+    /** First clause of the offsets (clauseStart[size] is the total clause count) */
+    private int[] clauseStart;
+    /** Walls of the clauses: two packed walls per clause, -1 if the second is unused */
+    private int[] clauseWalls = new int[64];
+    /** Number of clauses added so far */
+    private int clauseCount = 0;
+
+    /**
+     * Return the template of the visibility range, building it on first use
+     *
+     * @param range         The visibility range of the robot
+     * @return              The template of the range
+     */
+    public static VisibilityTemplate forRange(int range) {
+        return templates.computeIfAbsent(range, VisibilityTemplate::new);
+    }
+
+    /**
+     * Build the template of the range
+     *
+     * @param range         The visibility range
+     */
+    private VisibilityTemplate(int range) {
+        this.range = range;
+        int side = 2 * range + 1;
+        offsetX = new int[side * side];
+        offsetY = new int[side * side];
+        exact = new boolean[side * side];
+        clauseStart = new int[side * side + 1];
+
+        for (int dx = -range; dx <= range; dx++) {
+            for (int dy = -range; dy <= range; dy++) {
+                // Skip cells too far away: sqrt(dx^2+dy^2) > range+0.5
+                if (4 * (dx * dx + dy * dy) > side * side) continue;
+
+                offsetX[size] = dx;
+                offsetY[size] = dy;
+                clauseStart[size] = clauseCount;
+
+                // The origin of the template is placed at (range, range)
+                int x2 = range + dx;
+                int y2 = range + dy;
+                if (dx > 0 || (dx == 0 && dy > 0)) {
+                    collectClauses(range, range, x2, y2);
+                } else if (dx != 0 || dy != 0) {
+                    collectClauses(x2, y2, range, range);
+                }
+                size++;
+            }
+        }
+        clauseStart[size] = clauseCount;
+        clauseWalls = Arrays.copyOf(clauseWalls, clauseCount * 2);
+    }
+
+    /**
+     * Returns the number of cell offsets in the range
+     *
+     * @return              The number of cell offsets
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the X offset of a cell in the range
+     *
+     * @param i             Index of the offset
+     * @return              The X offset
+     */
+    public int getOffsetX(int i) {
+        return offsetX[i];
+    }
+
+    /**
+     * Returns the Y offset of a cell in the range
+     *
+     * @param i             Index of the offset
+     * @return              The Y offset
+     */
+    public int getOffsetY(int i) {
+        return offsetY[i];
+    }
+
+    /**
+     * Check if the cell at the offset is visible from the robot position.
+     * The cell at the offset has to be on the map.
+     *
+     * @param map           The map to check
+     * @param x             X coordinate of the robot
+     * @param y             Y coordinate of the robot
+     * @param i             Index of the offset
+     * @return              True if there is no wall in the way
+     */
+    public boolean isVisible(Map map, int x, int y, int i) {
+        if (exact[i]) {
+            return map.checkCellVisibility(x, y, x + offsetX[i], y + offsetY[i]);
+        }
+
+        CellGrid grid = map.grid;
+        int height = map.getHeight();
+        for (int clause = clauseStart[i]; clause < clauseStart[i + 1]; clause++) {
+            if (hasWall(grid, height, x, y, clauseWalls[2 * clause])
+                    && (clauseWalls[2 * clause + 1] == -1
+                            || hasWall(grid, height, x, y, clauseWalls[2 * clause + 1]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test a packed wall relative to the robot position
+     */
+    private boolean hasWall(CellGrid grid, int height, int x, int y, int wall) {
+        int side = 2 * range + 1;
+        int direction = wall & 3;
+        int cell = wall >> 2;
+        return grid.hasWall((x + cell / side - range) * height + y + cell % side - range, direction);
+    }
+
+    /**
+     * Pack a wall given in template coordinates
+     */
+    private int packWall(int x, int y, int direction) {
+        return ((x * (2 * range + 1) + y) << 2) | direction;
+    }
+
+    /**
+     * Add a clause of one or two walls given in template coordinates
+     */
+    private void addClause(int x1, int y1, int dir1, int x2, int y2, int dir2) {
+        if (2 * clauseCount + 2 > clauseWalls.length) {
+            clauseWalls = Arrays.copyOf(clauseWalls, clauseWalls.length * 2);
+        }
+        clauseWalls[2 * clauseCount] = packWall(x1, y1, dir1);
+        clauseWalls[2 * clauseCount + 1] = dir2 < 0 ? -1 : packWall(x2, y2, dir2);
+        clauseCount++;
+    }
+
+    /**
+     * Collect the wall tests between two points in the X+ direction. This is
+     * the same line stepping as Map.checkCellVisibilityXPlus, but instead of
+     * testing the walls it records them as clauses.
+     *
+     * @param x1_in         First point X coordinate
+     * @param y1_in         First point Y coordinate
+     * @param x2_in         Second point X coordinate
+     * @param y2_in         Second point Y coordinate
+     */
+    private void collectClauses(int x1_in, int y1_in, int x2_in, int y2_in) {
+        double dx, dy, a, b;
+
+        double x1 = x1_in + 0.5;
+        double y1 = y1_in + 0.5;
+        double x2 = x2_in + 0.5;
+        double y2 = y2_in + 0.5;
+
+        // y = a*x+b
+        dx = x2 - x1;
+        dy = y2 - y1;
+        if (dx != 0) {
+            a = dy / dx;
+        } else {
+            a = 0;
+        }
+        b = y1 - (x1 * a);
+
+        int ydir = -1;
+        if (y1 < y2) ydir = 1;
+
+        int xCell, yCell;
+        double xx, yy;
+        // Vertical wall test (only for non vertical lines)
+        if (dx != 0) {
+            xCell = x1_in + 1;
+            while (xCell <= x2_in) {
+                yy = a * xCell + b;
+
+                if (Math.abs(yy - Math.round(yy)) < 0.01) {
+                    // Corner crossing
+                    yCell = (int) Math.round(yy);
+                    if (ydir > 0) {
+                        // Direction \
+                        addClause(xCell - 1, yCell - 1, 1, xCell - 1, yCell - 1, 2);
+                        addClause(xCell, yCell, 0, xCell, yCell, 3);
+                        addClause(xCell - 1, yCell - 1, 1, xCell, yCell, 3);
+                        addClause(xCell - 1, yCell, 0, xCell, yCell, 0);
+                    } else {
+                        // Direction /
+                        addClause(xCell - 1, yCell, 0, xCell - 1, yCell, 1);
+                        addClause(xCell, yCell - 1, 2, xCell, yCell - 1, 3);
+                        addClause(xCell, yCell, 3, xCell, yCell - 1, 3);
+                        addClause(xCell - 1, yCell, 0, xCell, yCell, 0);
+                    }
+                } else {
+                    // Wall crossing
+                    yCell = (int) Math.floor(yy);
+                    addClause(xCell, yCell, 3, 0, 0, -1);
+                }
+
+                xCell++;
+            }
+        }
+
+        // Horizontal wall test
+        if (dy != 0) {
+            if (ydir > 0) {
+                // Direction \
+                yCell = y1_in + 1;
+                while (yCell <= y2_in) {
+                    if (a != 0) {
+                        xx = (yCell - b) / a;
+                    } else {
+                        xx = x1_in + 0.5;
+                    }
+
+                    xCell = (int) Math.floor(xx);
+                    if (Math.abs(xx - Math.round(xx)) < 1e-9) exact[size] = true;
+                    if (Math.abs(xCell - xx) > 0.01) {
+                        addClause(xCell, yCell, 0, 0, 0, -1);
+                    }
+                    yCell++;
+                }
+            } else {
+                // Direction /
+                yCell = y1_in;
+                while (yCell > y2_in) {
+                    if (a != 0) {
+                        xx = (yCell - b) / a;
+                    } else {
+                        xx = x1_in + 0.5;
+                    }
+
+                    xCell = (int) Math.floor(xx);
+                    if (Math.abs(xx - Math.round(xx)) < 1e-9) exact[size] = true;
+                    if (Math.abs(xCell - xx) > 0.001) {
+                        addClause(xCell, yCell, 0, 0, 0, -1);
+                    }
+                    yCell--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import rescueframework.SimulationContext;
+
+/**
+ * Copy of the maps, the injureds and the robots of a simulation at a step.
+ * The state is stored by cell and list indices, so it can be restored into
+ * another simulation loaded with the same map and agents.
+ */
+public final class WorldSnapshot {
+	/**
+	 * State of a map changed by the simulation steps
+	 */
+	static class MapState {
+		/** Copy of the cell state */
+		CellGrid grid;
+		/** Cell index and injured index pairs of the cells with an injured */
+		int[] injuredCells;
+		/** Injured indices of the injured list of the map */
+		int[] injureds;
+		/** Cell codes of the known exits */
+		int[] exitCells;
+		/** Cell indices on the frontier in their order */
+		int[] frontier;
+		/** Visibility ranges of the robots by robot index (null if none) */
+		int[][] robotRanges;
+		/** Cell codes of the wall changes not processed yet */
+		int[] changedWallCells;
+		/** Number of discovered cells */
+		int discoveredCellCount;
+	}
+
+	/** State of the injureds: the injureds of the world map first, in their order */
+	private final int[] injuredHealth;
+	private final boolean[] injuredSaved;
+	private final boolean[] injuredDiscovered;
+	/** Cell codes of the injured locations */
+	private final int[] injuredLocation;
+	/** Index of the world injured with the same id (-1 if none) */
+	private final int[] injuredOrigin;
+	/** State of the world map */
+	private final MapState mapState;
+	/** State of the discovered map */
+	private final MapState discoveredState;
+	/** State of the robots by index */
+	private final int[] robotLocation, robotBattery, robotInjured, robotMedicine, robotRange, robotWaited;
+
+	/**
+	 * Copy the state of a simulation
+	 *
+	 * @param context The simulation to copy
+	 */
+	public WorldSnapshot(SimulationContext context) {
+		Map map = context.getMap();
+		Map discovered = context.getDiscovered();
+		List<Robot> robots = context.getRobots();
+
+		// Index every injured object referenced by the maps and the robots
+		IdentityHashMap<Injured, Integer> indices = new IdentityHashMap<>();
+		ArrayList<Injured> injureds = new ArrayList<>();
+		for (Injured injured : map.injureds)
+			addInjured(injured, indices, injureds);
+		for (Injured injured : discovered.injureds)
+			addInjured(injured, indices, injureds);
+		for (Robot robot : robots)
+			addInjured(robot.injured, indices, injureds);
+		for (Map m : new Map[] { map, discovered }) {
+			for (int x = 0; x < m.getWidth(); x++) {
+				for (int y = 0; y < m.getHeight(); y++) {
+					addInjured(m.cells[x][y].injured, indices, injureds);
+				}
+			}
+		}
+
+		int count = injureds.size();
+		injuredHealth = new int[count];
+		injuredSaved = new boolean[count];
+		injuredDiscovered = new boolean[count];
+		injuredLocation = new int[count];
+		injuredOrigin = new int[count];
+		for (int i = 0; i < count; i++) {
+			Injured injured = injureds.get(i);
+			injuredHealth[i] = injured.getHealth();
+			injuredSaved[i] = injured.isSaved();
+			injuredDiscovered[i] = injured.isDiscovered();
+			injuredLocation[i] = cellCode(injured.getLocation());
+			injuredOrigin[i] = -1;
+			for (int j = 0; j < map.injureds.size(); j++) {
+				if (map.injureds.get(j).id == injured.id)
+					injuredOrigin[i] = j;
+			}
+		}
+
+		mapState = map.saveState(indices);
+		discoveredState = discovered.saveState(indices);
+
+		int robotCount = robots.size();
+		robotLocation = new int[robotCount];
+		robotBattery = new int[robotCount];
+		robotInjured = new int[robotCount];
+		robotMedicine = new int[robotCount];
+		robotRange = new int[robotCount];
+		robotWaited = new int[robotCount];
+		for (int i = 0; i < robotCount; i++) {
+			Robot robot = robots.get(i);
+			robotLocation[i] = cellCode(robot.getLocation());
+			robotBattery[i] = robot.getBatteryLifeTime();
+			robotInjured[i] = robot.injured == null ? -1 : indices.get(robot.injured);
+			robotMedicine[i] = robot.medicine;
+			robotRange[i] = robot.visibilityRange;
+			robotWaited[i] = robot.getWaited();
+		}
+	}
+
+	/**
+	 * Overwrite the state of a simulation loaded with the same map and agents
+	 *
+	 * @param context The simulation to restore
+	 */
+	public void restore(SimulationContext context) {
+		Map map = context.getMap();
+
+		// The world injureds keep their objects, the others are created again
+		Injured[] injureds = new Injured[injuredHealth.length];
+		for (int i = 0; i < injureds.length; i++) {
+			if (i < map.injureds.size()) {
+				injureds[i] = map.injureds.get(i);
+			} else {
+				injureds[i] = new Injured(injuredHealth[i]);
+				if (injuredOrigin[i] >= 0)
+					injureds[i].id = map.injureds.get(injuredOrigin[i]).id;
+			}
+			injureds[i].restore(injuredHealth[i], injuredSaved[i], injuredDiscovered[i],
+					cell(context, injuredLocation[i]));
+		}
+
+		map.restoreState(mapState, injureds);
+		context.getDiscovered().restoreState(discoveredState, injureds);
+
+		List<Robot> robots = context.getRobots();
+		for (int i = 0; i < robots.size(); i++) {
+			robots.get(i).restore(cell(context, robotLocation[i]), robotBattery[i],
+					robotInjured[i] < 0 ? null : injureds[robotInjured[i]], robotMedicine[i], robotRange[i],
+					robotWaited[i]);
+		}
+	}
+
+	/**
+	 * Add an injured to the index if it is not indexed yet
+	 */
+	private static void addInjured(Injured injured, IdentityHashMap<Injured, Integer> indices,
+			ArrayList<Injured> injureds) {
+		if (injured != null && !indices.containsKey(injured)) {
+			indices.put(injured, injureds.size());
+			injureds.add(injured);
+		}
+	}
+
+	/**
+	 * Returns the code of a cell: its index on the world map, -2-index on the
+	 * discovered map or -1 for no cell
+	 *
+	 * @param cell The cell or null
+	 * @return The code of the cell
+	 */
+	static int cellCode(Cell cell) {
+		if (cell == null)
+			return -1;
+		return cell.map == cell.map.getContext().getMap() ? cell.getIndex() : -2 - cell.getIndex();
+	}
+
+	/**
+	 * Returns the cell of a code
+	 *
+	 * @param context The simulation of the cell
+	 * @param code    The code returned by cellCode
+	 * @return The cell or null
+	 */
+	static Cell cell(SimulationContext context, int code) {
+		if (code == -1)
+			return null;
+		return code >= 0 ? context.getMap().getCell(code) : context.getDiscovered().getCell(-2 - code);
+	}
+}